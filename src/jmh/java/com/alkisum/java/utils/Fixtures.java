@@ -0,0 +1,204 @@
+package com.alkisum.java.utils;
+
+import com.mpatric.mp3agic.ID3v23Tag;
+import com.mpatric.mp3agic.NotSupportedException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Fixtures shared by the benchmarks: MP3 files with ID3v2 tags and JPEG
+ * covers of various sizes, written in temporary directories, and the
+ * configuration used by the benchmarked methods.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class Fixtures {
+
+    /**
+     * Frames allowed in the MP3 tags.
+     */
+    static final String TAG_FRAMES = "TIT2,TPE1,TALB,TYER,TRCK,APIC";
+
+    /**
+     * MPEG 1 Layer III frame header, 128 kbit/s, 44100 Hz, no padding.
+     */
+    private static final byte[] MPEG_HEADER = {
+            (byte) 0xff, (byte) 0xfb, (byte) 0x90, (byte) 0x64};
+
+    /**
+     * Length of a MPEG frame with the header above.
+     */
+    private static final int MPEG_FRAME_LENGTH = 417;
+
+    /**
+     * Fixtures constructor.
+     */
+    private Fixtures() {
+
+    }
+
+    /**
+     * Write the properties file used by the benchmarks in the working
+     * directory and load it. The confirmations are disabled so the
+     * benchmarked methods never wait for the user.
+     *
+     * @throws IOException The properties file cannot be written
+     */
+    static void configure() throws IOException {
+        String properties = "tag.frames=" + TAG_FRAMES + "\n"
+                + "album.mask=%y - %b\n"
+                + "custom.tag.allowed=false\n"
+                + "force.enabled=true\n";
+        Files.write(new File("discocleaner.properties").toPath(),
+                properties.getBytes(StandardCharsets.ISO_8859_1));
+        Config.build();
+    }
+
+    /**
+     * @return New temporary directory
+     * @throws IOException The directory cannot be created
+     */
+    static File createDirectory() throws IOException {
+        return Files.createTempDirectory("discocleaner-jmh").toFile();
+    }
+
+    /**
+     * Delete the given directory and its content.
+     *
+     * @param directory Directory to delete
+     * @throws IOException The directory cannot be deleted
+     */
+    static void delete(final File directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    /**
+     * Encode a noisy square image as JPEG. The noise keeps the encoded size
+     * close to the size of a scanned cover.
+     *
+     * @param size        Width and height of the image in pixels
+     * @param progressive true to encode a progressive JPEG, false for a
+     *                    baseline JPEG
+     * @return JPEG bytes
+     * @throws IOException The image cannot be encoded
+     */
+    static byte[] jpeg(final int size, final boolean progressive)
+            throws IOException {
+        BufferedImage image = new BufferedImage(size, size,
+                BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, (x * 255 / size) << 16
+                        | (y * 255 / size) << 8 | random.nextInt(64));
+            }
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg")
+                .next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setProgressiveMode(progressive
+                ? ImageWriteParam.MODE_DEFAULT
+                : ImageWriteParam.MODE_DISABLED);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Create the ID3v2.3 tag of a fixture MP3 file.
+     *
+     * @param track  Track number
+     * @param cover  JPEG cover to embed, null for none
+     * @param extras Number of frames not allowed in the configuration
+     * @return ID3v2 tag
+     */
+    static ID3v23Tag tag(final int track, final byte[] cover,
+                         final int extras) {
+        return tag("Artist", "Album", "1999", track, cover, extras);
+    }
+
+    /**
+     * Create the ID3v2.3 tag of a fixture MP3 file.
+     *
+     * @param artist Artist
+     * @param album  Album title
+     * @param year   Year
+     * @param track  Track number
+     * @param cover  JPEG cover to embed, null for none
+     * @param extras Number of frames not allowed in the configuration, up to 3
+     * @return ID3v2 tag
+     */
+    static ID3v23Tag tag(final String artist, final String album,
+                         final String year, final int track,
+                         final byte[] cover, final int extras) {
+        ID3v23Tag tag = new ID3v23Tag();
+        tag.setTitle("Song " + track);
+        tag.setArtist(artist);
+        tag.setAlbum(album);
+        tag.setYear(year);
+        tag.setTrack(String.valueOf(track));
+        if (cover != null) {
+            tag.setAlbumImage(cover, "image/jpeg");
+        }
+        if (extras > 0) {
+            tag.setGenreDescription("Rock");
+        }
+        if (extras > 1) {
+            tag.setComment("Ripped for the benchmarks");
+        }
+        if (extras > 2) {
+            tag.setComposer("Composer");
+        }
+        return tag;
+    }
+
+    /**
+     * Write a MP3 file made of the given tag followed by silent MPEG frames.
+     *
+     * @param file   File to write
+     * @param tag    ID3v2 tag
+     * @param frames Number of MPEG frames
+     * @return Written file
+     * @throws IOException The file cannot be written
+     */
+    static File mp3(final File file, final ID3v23Tag tag, final int frames)
+            throws IOException {
+        byte[] frame = new byte[MPEG_FRAME_LENGTH];
+        System.arraycopy(MPEG_HEADER, 0, frame, 0, MPEG_HEADER.length);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            out.write(tag.toBytes());
+            for (int i = 0; i < frames; i++) {
+                out.write(frame);
+            }
+        } catch (NotSupportedException e) {
+            throw new IOException(e);
+        }
+        return file;
+    }
+}
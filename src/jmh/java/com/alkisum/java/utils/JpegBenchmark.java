@@ -0,0 +1,88 @@
+package com.alkisum.java.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the baseline JPEG detection on covers of the given size.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JpegBenchmark {
+
+    /**
+     * Width and height of the cover in pixels.
+     */
+    @Param({"300", "1500", "3000"})
+    private int coverSize;
+
+    /**
+     * true for a progressive cover, false for a baseline cover.
+     */
+    @Param({"false", "true"})
+    private boolean progressive;
+
+    /**
+     * Directory containing the fixture.
+     */
+    private File directory;
+
+    /**
+     * Fixture cover.
+     */
+    private File cover;
+
+    /**
+     * Write the fixture cover.
+     *
+     * @throws Exception The fixture cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Fixtures.createDirectory();
+        cover = new File(directory, "cover.jpg");
+        Files.write(cover.toPath(), Fixtures.jpeg(coverSize, progressive));
+    }
+
+    /**
+     * Delete the fixture.
+     *
+     * @throws Exception The fixture cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(directory);
+    }
+
+    /**
+     * @return true if the cover is a baseline JPEG, false otherwise
+     * @throws Exception The cover cannot be read
+     */
+    @Benchmark
+    public boolean isBaseline() throws Exception {
+        return Jpeg.isBaseline(cover);
+    }
+}
@@ -0,0 +1,336 @@
+package com.alkisum.java.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generator of synthetic music libraries in the
+ * {@code <root>/<artist>/<album>/<songs>} layout, made of tiny valid MP3
+ * files. The issues found in a real library (non-allowed frames, ID3v1 tags,
+ * custom tags, progressive covers, obsolete cover names, invalid album
+ * directory names and junk files) are added to a given ratio of the albums or
+ * tracks. The same seed always generates the same library.
+ *
+ * <p>Usage: {@code LibraryGenerator <root> [--artists=N] [--albums=N]
+ * [--tracks=N] [--frames=N] [--extra-frames=RATIO] [--id3v1=RATIO]
+ * [--custom-tag=RATIO] [--progressive=RATIO] [--obsolete-cover=RATIO]
+ * [--unnamed=RATIO] [--junk=N] [--cover-size=PX] [--seed=N]}
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class LibraryGenerator {
+
+    /**
+     * Cover file name expected by the configuration written by
+     * {@link #properties(File)}.
+     */
+    static final String COVER_FILE_NAME = "cover.jpg";
+
+    /**
+     * Obsolete cover file name renamed to {@link #COVER_FILE_NAME}.
+     */
+    static final String OBSOLETE_COVER_FILE_NAME = "folder.jpg";
+
+    /**
+     * Number of artists.
+     */
+    private int artists = 10;
+
+    /**
+     * Number of albums per artist.
+     */
+    private int albums = 5;
+
+    /**
+     * Number of tracks per album.
+     */
+    private int tracks = 10;
+
+    /**
+     * Number of MPEG frames per track, about 26 ms each.
+     */
+    private int frames = 40;
+
+    /**
+     * Ratio of the tracks having frames not allowed in their tag.
+     */
+    private double extraFrames = 0.2;
+
+    /**
+     * Ratio of the tracks having an ID3v1 tag.
+     */
+    private double id3v1 = 0;
+
+    /**
+     * Ratio of the tracks having a custom tag.
+     */
+    private double customTag = 0.1;
+
+    /**
+     * Ratio of the albums having a progressive cover.
+     */
+    private double progressive = 0.2;
+
+    /**
+     * Ratio of the albums having their cover under an obsolete name.
+     */
+    private double obsoleteCover = 0.1;
+
+    /**
+     * Ratio of the albums whose directory name does not match the album
+     * pattern.
+     */
+    private double unnamed = 0.2;
+
+    /**
+     * Number of junk files per album.
+     */
+    private int junk = 1;
+
+    /**
+     * Width and height of the covers in pixels.
+     */
+    private int coverSize = 300;
+
+    /**
+     * Seed of the random generator.
+     */
+    private long seed = 1;
+
+    /**
+     * Generate the library given in the arguments.
+     *
+     * @param args Root directory followed by the options
+     * @throws IOException The library cannot be written
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: LibraryGenerator <root> "
+                    + "[--option=value]");
+            return;
+        }
+        LibraryGenerator generator = new LibraryGenerator();
+        generator.parse(args, 1);
+        long bytes = generator.generate(new File(args[0]));
+        System.out.println(generator.getAlbumCount() + " albums, "
+                + bytes / 1024 + " KiB written to " + args[0]);
+    }
+
+    /**
+     * Set the options given as {@code --name=value} arguments, the unknown
+     * options are ignored so the arguments can be shared with the harness.
+     *
+     * @param args  Arguments
+     * @param start Index of the first option
+     */
+    void parse(final String[] args, final int start) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = start; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length == 2 && option[0].startsWith("--")) {
+                options.put(option[0].substring(2), option[1]);
+            }
+        }
+        artists = Integer.parseInt(options.getOrDefault("artists",
+                String.valueOf(artists)));
+        albums = Integer.parseInt(options.getOrDefault("albums",
+                String.valueOf(albums)));
+        tracks = Integer.parseInt(options.getOrDefault("tracks",
+                String.valueOf(tracks)));
+        frames = Integer.parseInt(options.getOrDefault("frames",
+                String.valueOf(frames)));
+        extraFrames = Double.parseDouble(options.getOrDefault("extra-frames",
+                String.valueOf(extraFrames)));
+        id3v1 = Double.parseDouble(options.getOrDefault("id3v1",
+                String.valueOf(id3v1)));
+        customTag = Double.parseDouble(options.getOrDefault("custom-tag",
+                String.valueOf(customTag)));
+        progressive = Double.parseDouble(options.getOrDefault("progressive",
+                String.valueOf(progressive)));
+        obsoleteCover = Double.parseDouble(options.getOrDefault(
+                "obsolete-cover", String.valueOf(obsoleteCover)));
+        unnamed = Double.parseDouble(options.getOrDefault("unnamed",
+                String.valueOf(unnamed)));
+        junk = Integer.parseInt(options.getOrDefault("junk",
+                String.valueOf(junk)));
+        coverSize = Integer.parseInt(options.getOrDefault("cover-size",
+                String.valueOf(coverSize)));
+        seed = Long.parseLong(options.getOrDefault("seed",
+                String.valueOf(seed)));
+    }
+
+    /**
+     * @return Number of albums generated
+     */
+    int getAlbumCount() {
+        return artists * albums;
+    }
+
+    /**
+     * Write the properties matching the generated library in the given
+     * directory. Nothing is asked to the user except the retries, answered
+     * by the harness.
+     *
+     * @param root Root directory of the library
+     * @return Properties
+     */
+    static String properties(final File root) {
+        return "music.directory.path=" + root.getAbsolutePath()
+                .replace("\\", "\\\\") + "\n"
+                + "mp3.pattern=\\\\d{2} - Song \\\\d+\\\\.mp3\n"
+                + "album.pattern=\\\\[\\\\d{4}\\\\] .+\n"
+                + "album.mask=[%y] %b\n"
+                + "tag.frames=" + Fixtures.TAG_FRAMES + "\n"
+                + "custom.tag.allowed=false\n"
+                + "cover.file.name=" + COVER_FILE_NAME + "\n"
+                + "obsolete.cover.file.name=" + OBSOLETE_COVER_FILE_NAME
+                + "\n"
+                + "process.cover.enabled=true\n"
+                + "force.enabled=true\n";
+    }
+
+    /**
+     * Generate the library in the given root directory, replacing its
+     * previous content.
+     *
+     * @param root Root directory
+     * @return Number of bytes written
+     * @throws IOException The library cannot be written
+     */
+    long generate(final File root) throws IOException {
+        if (root.exists()) {
+            Fixtures.delete(root);
+        }
+        Random random = new Random(seed);
+        byte[] baseline = Fixtures.jpeg(coverSize, false);
+        byte[] progressiveCover = Fixtures.jpeg(coverSize, true);
+        long bytes = 0;
+        for (int a = 1; a <= artists; a++) {
+            String artist = String.format("Artist %03d", a);
+            for (int b = 1; b <= albums; b++) {
+                String album = String.format("Album %03d", b);
+                String year = String.valueOf(1960 + random.nextInt(60));
+
+                // album directory, named by the mask or not
+                String name = album;
+                if (random.nextDouble() >= unnamed) {
+                    name = "[" + year + "] " + album;
+                }
+                File directory = new File(new File(root, artist), name);
+                Files.createDirectories(directory.toPath());
+
+                // cover file, the tags embed the baseline cover
+                byte[] cover = baseline;
+                if (random.nextDouble() < progressive) {
+                    cover = progressiveCover;
+                }
+                String coverName = COVER_FILE_NAME;
+                if (random.nextDouble() < obsoleteCover) {
+                    coverName = OBSOLETE_COVER_FILE_NAME;
+                }
+                Files.write(new File(directory, coverName).toPath(), cover);
+                bytes += cover.length;
+
+                // tracks
+                for (int t = 1; t <= tracks; t++) {
+                    File song = new File(directory,
+                            String.format("%02d - Song %d.mp3", t, t));
+                    int extras = 0;
+                    if (random.nextDouble() < extraFrames) {
+                        extras = 1 + random.nextInt(3);
+                    }
+                    Fixtures.mp3(song, Fixtures.tag(artist, album, year, t,
+                            baseline, extras), frames);
+                    if (random.nextDouble() < customTag) {
+                        append(song, customTag());
+                    }
+                    if (random.nextDouble() < id3v1) {
+                        append(song, id3v1Tag(artist, album, year));
+                    }
+                    bytes += song.length();
+                }
+
+                // junk files
+                for (int j = 1; j <= junk; j++) {
+                    byte[] content = ("junk " + j + "\n").getBytes(
+                            StandardCharsets.US_ASCII);
+                    Files.write(new File(directory, "junk" + j + ".txt")
+                            .toPath(), content);
+                    bytes += content.length;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Append the given bytes to the given file.
+     *
+     * @param file  File to append to
+     * @param bytes Bytes to append
+     * @throws IOException The file cannot be written
+     */
+    private static void append(final File file, final byte[] bytes)
+            throws IOException {
+        Files.write(file.toPath(), bytes, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return APEv2 footer, read by mp3agic as a custom tag
+     */
+    private static byte[] customTag() {
+        ByteBuffer tag = ByteBuffer.allocate(32).order(
+                ByteOrder.LITTLE_ENDIAN);
+        tag.put("APETAGEX".getBytes(StandardCharsets.US_ASCII));
+        tag.putInt(2000);
+        tag.putInt(32);
+        tag.putInt(0);
+        tag.putInt(0);
+        return tag.array();
+    }
+
+    /**
+     * Create an ID3v1 tag.
+     *
+     * @param artist Artist
+     * @param album  Album title
+     * @param year   Year
+     * @return ID3v1 tag
+     */
+    private static byte[] id3v1Tag(final String artist, final String album,
+                                   final String year) {
+        byte[] tag = new byte[128];
+        put(tag, 0, "TAG", 3);
+        put(tag, 3, "Song", 30);
+        put(tag, 33, artist, 30);
+        put(tag, 63, album, 30);
+        put(tag, 93, year, 4);
+        tag[127] = (byte) 0xff;
+        return tag;
+    }
+
+    /**
+     * Write the given text in the given field of an ID3v1 tag.
+     *
+     * @param tag    ID3v1 tag
+     * @param offset Offset of the field
+     * @param text   Text to write
+     * @param length Length of the field
+     */
+    private static void put(final byte[] tag, final int offset,
+                            final String text, final int length) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(bytes, 0, tag, offset, Math.min(length,
+                bytes.length));
+    }
+}
@@ -0,0 +1,135 @@
+package com.alkisum.java.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the frame validation and of the album mask substitution on an
+ * album of the given number of tracks. With cached tags, the tags are cached
+ * by the first invocation and the benchmarks measure the checks only.
+ * Without, the track cache is emptied before each invocation and the
+ * benchmarks measure the file reads too.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class Mp3Benchmark {
+
+    /**
+     * Number of tracks in the album.
+     */
+    @Param({"4", "20"})
+    private int tracks;
+
+    /**
+     * Number of frames not allowed in the tag of each track.
+     */
+    @Param({"0", "3"})
+    private int extras;
+
+    /**
+     * Flag set to true if the tags are read from the track cache, false if
+     * they are read from the files at each invocation.
+     */
+    @Param({"true", "false"})
+    private boolean cached;
+
+    /**
+     * Directory containing the fixture.
+     */
+    private File directory;
+
+    /**
+     * Snapshot of the fixture album.
+     */
+    private AlbumSnapshot album;
+
+    /**
+     * Write the fixture album, every tag contains the allowed frames so no
+     * warning is printed.
+     *
+     * @throws Exception The fixture cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Fixtures.configure();
+        directory = Fixtures.createDirectory();
+        File albumDirectory = new File(directory, "Album");
+        if (!albumDirectory.mkdir()) {
+            throw new IllegalStateException("Cannot create "
+                    + albumDirectory);
+        }
+        byte[] cover = Fixtures.jpeg(500, false);
+        for (int i = 1; i <= tracks; i++) {
+            Fixtures.mp3(new File(albumDirectory,
+                            String.format("%02d - Song.mp3", i)),
+                    Fixtures.tag(i, cover, extras), 100);
+        }
+        album = AlbumSnapshot.of(albumDirectory);
+    }
+
+    /**
+     * Remove the tracks from the track cache before each invocation when the
+     * tags are not cached.
+     */
+    @Setup(Level.Invocation)
+    public void invalidate() {
+        if (cached) {
+            return;
+        }
+        for (AlbumSnapshot.Entry entry : album.getEntries()) {
+            TrackCache.invalidate(entry.getFile());
+        }
+    }
+
+    /**
+     * Delete the fixture.
+     *
+     * @throws Exception The fixture cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(directory);
+    }
+
+    /**
+     * @return Tag changes collected by the frame validation
+     * @throws Exception The tags cannot be read
+     */
+    @Benchmark
+    public PendingChanges checkMp3Tag() throws Exception {
+        PendingChanges changes = new PendingChanges();
+        Mp3.checkMp3Tag(album, changes);
+        return changes;
+    }
+
+    /**
+     * @return Album directory name built from the mask
+     * @throws Exception The tags cannot be read
+     */
+    @Benchmark
+    public String getAlbumDirectoryNameFromMask() throws Exception {
+        return Mp3.getAlbumDirectoryNameFromMask(album);
+    }
+}
@@ -0,0 +1,206 @@
+package com.alkisum.java.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end benchmark of a full clean of a synthetic library. For each run,
+ * the library is generated by {@link LibraryGenerator}, then DiscoCleaner is
+ * started in a new JVM with the confirmations disabled, the remaining
+ * questions being answered "n". The runs are done with a warm page cache (the
+ * library is read once before the run) and with a cold page cache (the page
+ * cache is dropped before the run, Linux only and root required). The number
+ * of albums and MB processed per second are reported for each run.
+ *
+ * <p>Usage: {@code ScanHarness <work directory> [--runs=N] [--threads=N]
+ * [--cache=warm|cold|both] [generator options]}
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class ScanHarness {
+
+    /**
+     * File dropping the page cache on Linux.
+     */
+    private static final String DROP_CACHES = "/proc/sys/vm/drop_caches";
+
+    /**
+     * ScanHarness constructor.
+     */
+    private ScanHarness() {
+
+    }
+
+    /**
+     * Run the benchmark given in the arguments.
+     *
+     * @param args Work directory followed by the options
+     * @throws IOException          The library cannot be written
+     * @throws InterruptedException Current thread has been interrupted
+     */
+    public static void main(final String[] args)
+            throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: ScanHarness <work directory> "
+                    + "[--option=value]");
+            return;
+        }
+        File work = new File(args[0]).getAbsoluteFile();
+        int runs = 3;
+        int threads = 1;
+        String cache = "both";
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--runs=")) {
+                runs = Integer.parseInt(args[i].substring(7));
+            } else if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[i].substring(10));
+            } else if (args[i].startsWith("--cache=")) {
+                cache = args[i].substring(8);
+            }
+        }
+        LibraryGenerator generator = new LibraryGenerator();
+        generator.parse(args, 1);
+
+        List<String> modes = new ArrayList<>();
+        if (!cache.equals("cold")) {
+            modes.add("warm");
+        }
+        if (!cache.equals("warm")) {
+            if (new File(DROP_CACHES).canWrite()) {
+                modes.add("cold");
+            } else {
+                System.out.println("Cold cache runs skipped: "
+                        + DROP_CACHES + " is not writable");
+            }
+        }
+
+        System.out.println(String.format("%-6s%6s%10s%12s%12s%12s", "Cache",
+                "Run", "Albums", "MB", "Albums/s", "MB/s"));
+        for (String mode : modes) {
+            for (int run = 1; run <= runs; run++) {
+                // generate a new library, the previous one has been cleaned
+                File root = new File(work, "library");
+                long bytes = generator.generate(root);
+                if (mode.equals("warm")) {
+                    readAll(root);
+                } else {
+                    dropCaches();
+                }
+
+                long elapsed = clean(work, root, threads, run);
+                double seconds = elapsed / 1e9;
+                double megabytes = bytes / (1024.0 * 1024.0);
+                System.out.println(String.format(
+                        "%-6s%6d%10d%12.1f%12.1f%12.1f", mode, run,
+                        generator.getAlbumCount(), megabytes,
+                        generator.getAlbumCount() / seconds,
+                        megabytes / seconds));
+            }
+        }
+    }
+
+    /**
+     * Clean the given library with DiscoCleaner started in a new JVM. The
+     * output is written to the work directory.
+     *
+     * @param work    Work directory, holding the properties file
+     * @param root    Library to clean
+     * @param threads Number of threads given to DiscoCleaner
+     * @param run     Run number
+     * @return Wall time of the clean in nanoseconds
+     * @throws IOException          The process cannot be started
+     * @throws InterruptedException Current thread has been interrupted
+     */
+    private static long clean(final File work, final File root,
+                              final int threads, final int run)
+            throws IOException, InterruptedException {
+        Files.write(new File(work, "discocleaner.properties").toPath(),
+                LibraryGenerator.properties(root).getBytes(
+                        StandardCharsets.ISO_8859_1));
+        File java = new File(System.getProperty("java.home"), "bin/java");
+        ProcessBuilder pb = new ProcessBuilder(java.getPath(), "-cp",
+                System.getProperty("java.class.path"),
+                "com.alkisum.java.main.DiscoCleaner", "--threads=" + threads);
+        pb.directory(work);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(new File(work, "output-" + run + ".txt"));
+
+        long start = System.nanoTime();
+        Process process = pb.start();
+        Thread answers = new Thread(() -> answer(process), "answers");
+        answers.setDaemon(true);
+        answers.start();
+        int exitCode = process.waitFor();
+        long elapsed = System.nanoTime() - start;
+        if (exitCode != 0) {
+            throw new IOException("DiscoCleaner exited with " + exitCode);
+        }
+        return elapsed;
+    }
+
+    /**
+     * Answer "n" to every question asked by the given process: do not retry,
+     * do not open the file manager.
+     *
+     * @param process DiscoCleaner process
+     */
+    private static void answer(final Process process) {
+        byte[] no = "n\n".getBytes(StandardCharsets.US_ASCII);
+        try (OutputStream in = process.getOutputStream()) {
+            while (process.isAlive()) {
+                in.write(no);
+                in.flush();
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+        } catch (IOException e) {
+            // the process has exited
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read every file of the given directory to load it in the page cache.
+     *
+     * @param root Directory to read
+     * @throws IOException The files cannot be read
+     */
+    private static void readAll(final File root) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!Files.isRegularFile(path)) {
+                    continue;
+                }
+                try (InputStream in = Files.newInputStream(path)) {
+                    while (in.read(buffer) >= 0) {
+                        continue;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the dirty pages and drop the page cache.
+     *
+     * @throws IOException          The page cache cannot be dropped
+     * @throws InterruptedException Current thread has been interrupted
+     */
+    private static void dropCaches() throws IOException, InterruptedException {
+        new ProcessBuilder("sync").inheritIO().start().waitFor();
+        Files.write(new File(DROP_CACHES).toPath(),
+                "3\n".getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,123 @@
+package com.alkisum.java.utils;
+
+import com.mpatric.mp3agic.AbstractID3v2Tag;
+import com.mpatric.mp3agic.Mp3File;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the tag parsing and of the tag save, on a MP3 file whose tag
+ * embeds a cover of the given size. The whole file parsing by mp3agic is
+ * measured as a reference for the tag parsing.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TagBenchmark {
+
+    /**
+     * Width and height of the embedded cover in pixels, 0 for no cover.
+     */
+    @Param({"0", "500", "1500"})
+    private int coverSize;
+
+    /**
+     * Directory containing the fixture.
+     */
+    private File directory;
+
+    /**
+     * Fixture MP3 file.
+     */
+    private File song;
+
+    /**
+     * Tag written by the save benchmark, fits in the tag of the fixture.
+     */
+    private AbstractID3v2Tag tag;
+
+    /**
+     * Write the fixture MP3 file.
+     *
+     * @throws Exception The fixture cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Fixtures.configure();
+        directory = Fixtures.createDirectory();
+        byte[] cover = null;
+        if (coverSize > 0) {
+            cover = Fixtures.jpeg(coverSize, false);
+        }
+        song = Fixtures.mp3(new File(directory, "01 - Song.mp3"),
+                Fixtures.tag(1, cover, 3), 2000);
+        tag = TagReader.readId3v2Tag(song);
+    }
+
+    /**
+     * Delete the fixture.
+     *
+     * @throws Exception The fixture cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(directory);
+    }
+
+    /**
+     * @return Tags read without scanning the MPEG frames
+     * @throws Exception The file cannot be read
+     */
+    @Benchmark
+    public TrackTags readTags() throws Exception {
+        return TagReader.read(song);
+    }
+
+    /**
+     * @return ID3v2 tag read without scanning the MPEG frames
+     * @throws Exception The file cannot be read
+     */
+    @Benchmark
+    public AbstractID3v2Tag readId3v2Tag() throws Exception {
+        return TagReader.readId3v2Tag(song);
+    }
+
+    /**
+     * @return MP3 file parsed by mp3agic, MPEG frames included
+     * @throws Exception The file cannot be read
+     */
+    @Benchmark
+    public Mp3File parseMp3File() throws Exception {
+        return new Mp3File(song);
+    }
+
+    /**
+     * @return Number of bytes written, the tag region only
+     * @throws Exception The file cannot be written
+     */
+    @Benchmark
+    public long saveTag() throws Exception {
+        return TagWriter.write(song, tag);
+    }
+}
@@ -4,6 +4,8 @@ import com.alkisum.java.utils.Browser;
 import com.alkisum.java.utils.Config;
 import com.alkisum.java.utils.FileSystem;
 import com.alkisum.java.utils.Logger;
+import com.alkisum.java.utils.Metrics;
+import com.alkisum.java.utils.Plan;
 import com.alkisum.java.utils.Terminal;
 
 import java.io.File;
@@ -30,16 +32,66 @@ public final class DiscoCleaner {
         Map<String, String> arguments = new HashMap<>();
         for (String arg : args) {
             if (arg.startsWith("--artist=")) {
-                // get artist argument
-                String[] artistParams = arg.split("=");
-                if (artistParams.length > 1) {
-                    arguments.put("artist", artistParams[1]);
+                // get artist argument, can be repeated
+                String[] artistParams = arg.split("=", 2);
+                if (!artistParams[1].isEmpty()) {
+                    arguments.merge("artist", artistParams[1],
+                            (a, b) -> a + "\n" + b);
                 }
             } else if (arg.startsWith("--album=")) {
-                // get album argument
-                String[] albumParams = arg.split("=");
-                if (albumParams.length > 1) {
-                    arguments.put("album", albumParams[1]);
+                // get album argument, can be repeated
+                String[] albumParams = arg.split("=", 2);
+                if (!albumParams[1].isEmpty()) {
+                    arguments.merge("album", albumParams[1],
+                            (a, b) -> a + "\n" + b);
+                }
+            } else if (arg.startsWith("--paths-from=")) {
+                // get paths from argument
+                String[] pathsParams = arg.split("=", 2);
+                if (!pathsParams[1].isEmpty()) {
+                    arguments.put("paths-from", pathsParams[1]);
+                }
+            } else if (arg.matches("--threads=[1-9][0-9]*")) {
+                // get threads argument
+                arguments.put("threads", arg.split("=")[1]);
+            } else if (arg.matches("--shard=[1-9][0-9]*/[1-9][0-9]*")) {
+                // get shard argument, the index cannot exceed the number of
+                // shards
+                String[] shardParams = arg.split("=")[1].split("/");
+                if (Integer.parseInt(shardParams[0])
+                        > Integer.parseInt(shardParams[1])) {
+                    System.out.println(arg + " is not a valid shard. "
+                            + "--help for help");
+                    return;
+                }
+                arguments.put("shard", arg.split("=")[1]);
+            } else if (arg.startsWith("--merge-metrics=")) {
+                // get merge metrics argument, can be repeated
+                String[] mergeParams = arg.split("=", 2);
+                if (!mergeParams[1].isEmpty()) {
+                    arguments.merge("merge-metrics", mergeParams[1],
+                            (a, b) -> a + "\n" + b);
+                }
+            } else if (arg.equals("--quiet")) {
+                // get quiet argument
+                arguments.put("quiet", "true");
+            } else if (arg.matches("--format=(text|ndjson)")) {
+                // get format argument
+                arguments.put("format", arg.split("=")[1]);
+            } else if (arg.equals("--resume")) {
+                // get resume argument
+                arguments.put("resume", "true");
+            } else if (arg.startsWith("--plan=")) {
+                // get plan argument
+                String[] planParams = arg.split("=", 2);
+                if (!planParams[1].isEmpty()) {
+                    arguments.put("plan", planParams[1]);
+                }
+            } else if (arg.startsWith("--apply=")) {
+                // get apply argument
+                String[] applyParams = arg.split("=", 2);
+                if (!applyParams[1].isEmpty()) {
+                    arguments.put("apply", applyParams[1]);
                 }
             } else if (arg.equals("--version")) {
                 // show version
@@ -81,22 +133,34 @@ public final class DiscoCleaner {
             // add arguments to configuration
             Config.addArguments(arguments);
 
-            // create root file (discography to browse)
-            File root = new File(Config.getPath());
+            if (!Config.getMergedMetrics().isEmpty()) {
+                // merge the metrics files written by the shards
+                Metrics.merge(Config.getMergedMetrics());
+                return;
+            }
 
-            // list artist files
-            File[] artists = root.listFiles();
+            // start measuring the run
+            Metrics.begin();
 
-            // check if root directory contains artist files
-            if (artists == null || artists.length == 0) {
-                FileSystem.openFileManager("No artists in directory",
-                        Config.getPath(), 0);
-                Terminal.askToContinue(0);
-                return;
+            if (Config.getApplyFile() != null) {
+                // execute the actions written in the plan file
+                Plan.apply(new File(Config.getApplyFile()));
+            } else {
+                // create root file (discography to browse)
+                File root = new File(Config.getPath());
+
+                // browse artist files, check if root directory contains
+                // artist files
+                if (!Browser.browseArtists(root)) {
+                    FileSystem.openFileManager("No artists in directory",
+                            Config.getPath(), 0);
+                    Terminal.askToContinue(0);
+                    return;
+                }
             }
 
-            // browse artist files
-            Browser.browseArtists(artists);
+            // print timing and counters of each stage
+            Metrics.report();
 
             // write logs
             if (Config.isLogEnabled()) {
@@ -115,6 +179,7 @@ public final class DiscoCleaner {
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
+            Terminal.flush();
             Terminal.closeScanner();
         }
     }
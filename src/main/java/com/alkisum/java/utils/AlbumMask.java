@@ -0,0 +1,220 @@
+package com.alkisum.java.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Album directory mask compiled once into literals and placeholders, applied
+ * in one pass to the tag information of an album. The characters not allowed
+ * in a directory name are skipped while the name is written.
+ *
+ * <p>Placeholders:
+ * <ul>
+ * <li>%a: artist</li>
+ * <li>%b: album</li>
+ * <li>%y: year</li>
+ * <li>%g: genre</li>
+ * <li>%d: disc number</li>
+ * <li>%A: album artist</li>
+ * <li>%n: number of tracks</li>
+ * <li>%%: percent sign</li>
+ * </ul>
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class AlbumMask {
+
+    /**
+     * Characters not allowed in a directory name.
+     */
+    private static final String ILLEGAL_CHARACTERS = "\\/:*?\"<>|";
+
+    /**
+     * Compiled mask specified in configuration, null if none.
+     */
+    private static AlbumMask mask;
+
+    /**
+     * Literals of the mask, one more than the placeholders: the literal at
+     * index i is written before the placeholder at index i.
+     */
+    private final String[] literals;
+
+    /**
+     * Placeholder characters of the mask.
+     */
+    private final char[] placeholders;
+
+    /**
+     * Length of the literals, used to size the name.
+     */
+    private final int length;
+
+    /**
+     * AlbumMask constructor.
+     *
+     * @param pattern Mask to compile
+     */
+    private AlbumMask(final String pattern) {
+        List<String> literalList = new ArrayList<>();
+        StringBuilder placeholderList = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '%' && i + 1 < pattern.length()) {
+                char next = pattern.charAt(i + 1);
+                if (next == '%') {
+                    literal.append('%');
+                    i += 2;
+                    continue;
+                }
+                if (getLabel(next) != null) {
+                    literalList.add(literal.toString());
+                    literal.setLength(0);
+                    placeholderList.append(next);
+                    i += 2;
+                    continue;
+                }
+            }
+            // unknown placeholders are kept as written
+            literal.append(c);
+            i++;
+        }
+        literalList.add(literal.toString());
+        literals = literalList.toArray(new String[0]);
+        placeholders = placeholderList.toString().toCharArray();
+        int total = 0;
+        for (String l : literals) {
+            total += l.length();
+        }
+        length = total;
+    }
+
+    /**
+     * Compile the mask specified in configuration.
+     */
+    static void compile() {
+        String pattern = Config.getAlbumMask();
+        if (pattern == null) {
+            mask = null;
+        } else {
+            mask = new AlbumMask(pattern);
+        }
+    }
+
+    /**
+     * @return Compiled mask specified in configuration, null if none
+     */
+    static AlbumMask get() {
+        return mask;
+    }
+
+    /**
+     * Build the album directory name from the given tags.
+     *
+     * @param tags       Tags of one MP3 file of the album
+     * @param trackCount Number of MP3 files in the album, used when the tag
+     *                   does not contain the number of tracks
+     * @return Album directory name, null if the tags do not contain the value
+     * of a placeholder
+     */
+    String format(final TrackTags tags, final int trackCount) {
+        StringBuilder name = new StringBuilder(
+                length + 16 * placeholders.length);
+        appendLegal(name, literals[0]);
+        for (int i = 0; i < placeholders.length; i++) {
+            char placeholder = placeholders[i];
+            String value = getValue(placeholder, tags, trackCount);
+            if (value == null) {
+                // never write an unresolved placeholder in the name
+                Terminal.printWarning(getLabel(placeholder) + " cannot be "
+                        + "used in album directory mask (null)", 2);
+                return null;
+            }
+            appendLegal(name, value);
+            appendLegal(name, literals[i + 1]);
+        }
+        return name.toString();
+    }
+
+    /**
+     * Get the value of the given placeholder.
+     *
+     * @param placeholder Placeholder character
+     * @param tags        Tags of one MP3 file of the album
+     * @param trackCount  Number of MP3 files in the album
+     * @return Value, null if the tag does not contain it
+     */
+    private static String getValue(final char placeholder,
+                                   final TrackTags tags,
+                                   final int trackCount) {
+        switch (placeholder) {
+            case 'a':
+                return tags.getArtist();
+            case 'b':
+                return tags.getAlbum();
+            case 'y':
+                return tags.getYear();
+            case 'g':
+                return tags.getGenre();
+            case 'd':
+                return tags.getDisc();
+            case 'A':
+                return tags.getAlbumArtist();
+            case 'n':
+                String count = tags.getTrackCount();
+                if (count != null) {
+                    return count;
+                }
+                return String.valueOf(trackCount);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param placeholder Placeholder character
+     * @return Label of the placeholder printed in the warnings, null if the
+     * character is not a placeholder
+     */
+    private static String getLabel(final char placeholder) {
+        switch (placeholder) {
+            case 'a':
+                return "Artist";
+            case 'b':
+                return "Album";
+            case 'y':
+                return "Year";
+            case 'g':
+                return "Genre";
+            case 'd':
+                return "Disc number";
+            case 'A':
+                return "Album artist";
+            case 'n':
+                return "Track count";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Append the given text without the characters not allowed in a
+     * directory name.
+     *
+     * @param name Name to append to
+     * @param text Text to append
+     */
+    private static void appendLegal(final StringBuilder name,
+                                    final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (ILLEGAL_CHARACTERS.indexOf(c) < 0) {
+                name.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.alkisum.java.utils;
+
+import com.alkisum.java.exceptions.EmptyAlbumDirectoryException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Immutable snapshot of an album directory. The directory is listed and the
+ * attributes of its files are read once, the snapshot is then passed through
+ * the whole album process and updated only by the operations renaming or
+ * deleting files.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class AlbumSnapshot {
+
+    /**
+     * Album directory.
+     */
+    private final File directory;
+
+    /**
+     * Files contained in the album directory, sorted by name.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * Last modified time in milliseconds of the album directory when it has
+     * been listed, -1 if unknown.
+     */
+    private final long lastModified;
+
+    /**
+     * AlbumSnapshot constructor.
+     *
+     * @param directory    Album directory
+     * @param entries      Files contained in the album directory, sorted by
+     *                     name
+     * @param lastModified Last modified time of the album directory when it
+     *                     has been listed, -1 if unknown
+     */
+    private AlbumSnapshot(final File directory, final List<Entry> entries,
+                          final long lastModified) {
+        this.directory = directory;
+        this.entries = Collections.unmodifiableList(entries);
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * List the given album directory and read the attributes of its files.
+     *
+     * @param album Album directory to list
+     * @return Snapshot of the album directory
+     * @throws EmptyAlbumDirectoryException Empty album directory
+     */
+    static AlbumSnapshot of(final File album)
+            throws EmptyAlbumDirectoryException {
+        return of(album, null);
+    }
+
+    /**
+     * Check the given snapshot of the album directory, list the directory if
+     * the snapshot has not been taken ahead or if the directory has changed
+     * since then, for example while the user was answering the questions of
+     * the previous album.
+     *
+     * @param album  Album directory
+     * @param listed Snapshot of the album directory, null to list it
+     * @return Snapshot of the album directory
+     * @throws EmptyAlbumDirectoryException Empty album directory
+     */
+    static AlbumSnapshot of(final File album, final AlbumSnapshot listed)
+            throws EmptyAlbumDirectoryException {
+        AlbumSnapshot snapshot = listed;
+        if (snapshot == null || snapshot.hasChanged()) {
+            try {
+                snapshot = list(album);
+            } catch (IOException e) {
+                // the directory cannot be listed: handle it as an empty
+                // directory
+                snapshot = new AlbumSnapshot(album, new ArrayList<>(), -1);
+            }
+        }
+
+        // check if album directory contains song files
+        if (snapshot.entries.isEmpty()) {
+            FileSystem.openFileManager("No songs in directory",
+                    album.getAbsolutePath(), 2);
+            Terminal.askToContinue(2);
+            throw new EmptyAlbumDirectoryException();
+        }
+        return snapshot;
+    }
+
+    /**
+     * List the given album directory and read the attributes of its files,
+     * without checking if the directory contains song files. The attributes
+     * are taken from the listing when the file system returns them with the
+     * directory entries (Windows, SMB shares), otherwise they are read for
+     * each file.
+     *
+     * @param album Album directory to list
+     * @return Snapshot of the album directory, possibly empty
+     * @throws IOException The directory cannot be listed
+     */
+    static AlbumSnapshot list(final File album) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long[] lastModified = {-1};
+        Path root = album.toPath();
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(
+                            final Path path,
+                            final BasicFileAttributes attributes) {
+                        // read before the entries
+                        lastModified[0] = attributes.lastModifiedTime()
+                                .toMillis();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(
+                            final Path path,
+                            final BasicFileAttributes attributes) {
+                        if (!path.equals(root)) {
+                            entries.add(new Entry(path.toFile(), attributes));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        entries.sort(Comparator.comparing(Entry::getName));
+        return new AlbumSnapshot(album, entries, lastModified[0]);
+    }
+
+    /**
+     * Check if the album directory has changed since it has been listed: a
+     * file has been added, deleted or renamed. Only the attributes of the
+     * directory are read.
+     *
+     * @return true if the directory has changed or cannot be read, false
+     * otherwise
+     */
+    private boolean hasChanged() {
+        if (lastModified < 0) {
+            return true;
+        }
+        try {
+            return Files.getLastModifiedTime(directory.toPath()).toMillis()
+                    != lastModified;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * List the album directory again, used when the files may have been
+     * changed outside of the program.
+     *
+     * @return New snapshot of the album directory
+     * @throws EmptyAlbumDirectoryException Empty album directory
+     */
+    AlbumSnapshot refresh() throws EmptyAlbumDirectoryException {
+        return of(directory);
+    }
+
+    /**
+     * @return Album directory
+     */
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return Files contained in the album directory, sorted by name
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return MP3 files contained in the album directory, sorted by name
+     */
+    List<Entry> getMp3Files() {
+        List<Entry> mp3Files = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.isFile() && entry.getName().endsWith(".mp3")) {
+                mp3Files.add(entry);
+            }
+        }
+        return mp3Files;
+    }
+
+    /**
+     * Get the entry with the given name.
+     *
+     * @param name File name
+     * @return Entry with the given name, null if the album does not contain
+     * any file with this name
+     */
+    Entry get(final String name) {
+        for (Entry entry : entries) {
+            if (entry.getName().equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the album contains a file with the given name.
+     *
+     * @param name File name
+     * @return true if the album contains the file, false otherwise
+     */
+    boolean contains(final String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * Create a snapshot in which the given file has been moved to the given
+     * target in the album directory.
+     *
+     * @param src    File moved
+     * @param target New file
+     * @return Updated snapshot
+     */
+    AlbumSnapshot withMoved(final File src, final File target) {
+        List<Entry> updated = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.getName().equals(src.getName())) {
+                updated.add(entry.withFile(target));
+            } else if (!entry.getName().equals(target.getName())) {
+                updated.add(entry);
+            }
+        }
+        updated.sort(Comparator.comparing(Entry::getName));
+        return new AlbumSnapshot(directory, updated, lastModified);
+    }
+
+    /**
+     * Create a snapshot in which the given file has been deleted.
+     *
+     * @param file File deleted
+     * @return Updated snapshot
+     */
+    AlbumSnapshot withDeleted(final File file) {
+        List<Entry> updated = new ArrayList<>(entries);
+        updated.removeIf(entry -> entry.getName().equals(file.getName()));
+        return new AlbumSnapshot(directory, updated, lastModified);
+    }
+
+    /**
+     * Create a snapshot with the given file planned to be written, used in
+     * plan mode where the file is not written. The attributes of the file are
+     * unknown.
+     *
+     * @param file Planned file
+     * @return Updated snapshot
+     */
+    AlbumSnapshot withPlanned(final File file) {
+        List<Entry> updated = new ArrayList<>(entries);
+        updated.removeIf(entry -> entry.getName().equals(file.getName()));
+        updated.add(new Entry(file, false, true, 0, 0));
+        updated.sort(Comparator.comparing(Entry::getName));
+        return new AlbumSnapshot(directory, updated, lastModified);
+    }
+
+    /**
+     * Create a snapshot in which the given file has been created or replaced.
+     * Only the attributes of this file are read.
+     *
+     * @param file File created or replaced
+     * @return Updated snapshot
+     * @throws IOException The file attributes cannot be read
+     */
+    AlbumSnapshot withWritten(final File file) throws IOException {
+        List<Entry> updated = new ArrayList<>(entries);
+        updated.removeIf(entry -> entry.getName().equals(file.getName()));
+        updated.add(new Entry(file, Files.readAttributes(file.toPath(),
+                BasicFileAttributes.class)));
+        updated.sort(Comparator.comparing(Entry::getName));
+        return new AlbumSnapshot(directory, updated, lastModified);
+    }
+
+    /**
+     * Create a snapshot in which the album directory has been renamed.
+     *
+     * @param renamed New album directory
+     * @return Updated snapshot
+     */
+    AlbumSnapshot withDirectory(final File renamed) {
+        List<Entry> updated = new ArrayList<>();
+        for (Entry entry : entries) {
+            updated.add(entry.withFile(new File(renamed, entry.getName())));
+        }
+        return new AlbumSnapshot(renamed, updated, lastModified);
+    }
+
+    /**
+     * File contained in the album directory, with the attributes read when
+     * listing the directory.
+     */
+    static final class Entry {
+
+        /**
+         * File.
+         */
+        private final File file;
+
+        /**
+         * Flag set to true if the file is a directory, false otherwise.
+         */
+        private final boolean directory;
+
+        /**
+         * Flag set to true if the file is a regular file, false otherwise.
+         */
+        private final boolean regularFile;
+
+        /**
+         * File size in bytes.
+         */
+        private final long size;
+
+        /**
+         * Last modified time in milliseconds.
+         */
+        private final long lastModified;
+
+        /**
+         * Entry constructor.
+         *
+         * @param file       File
+         * @param attributes File attributes
+         */
+        private Entry(final File file, final BasicFileAttributes attributes) {
+            this(file, attributes.isDirectory(), attributes.isRegularFile(),
+                    attributes.size(),
+                    attributes.lastModifiedTime().toMillis());
+        }
+
+        /**
+         * Entry constructor.
+         *
+         * @param file         File
+         * @param directory    true if the file is a directory
+         * @param regularFile  true if the file is a regular file
+         * @param size         File size in bytes
+         * @param lastModified Last modified time in milliseconds
+         */
+        private Entry(final File file, final boolean directory,
+                      final boolean regularFile, final long size,
+                      final long lastModified) {
+            this.file = file;
+            this.directory = directory;
+            this.regularFile = regularFile;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Create the same entry for another file, used when the file has been
+         * moved.
+         *
+         * @param moved Moved file
+         * @return Entry for the moved file
+         */
+        private Entry withFile(final File moved) {
+            return new Entry(moved, directory, regularFile, size,
+                    lastModified);
+        }
+
+        /**
+         * @return File
+         */
+        File getFile() {
+            return file;
+        }
+
+        /**
+         * @return File name
+         */
+        String getName() {
+            return file.getName();
+        }
+
+        /**
+         * @return true if the file is a directory, false otherwise
+         */
+        boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * @return true if the file is a regular file, false otherwise
+         */
+        boolean isFile() {
+            return regularFile;
+        }
+
+        /**
+         * @return File size in bytes
+         */
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * @return Last modified time in milliseconds
+         */
+        long getLastModified() {
+            return lastModified;
+        }
+    }
+}
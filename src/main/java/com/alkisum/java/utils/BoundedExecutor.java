@@ -0,0 +1,54 @@
+package com.alkisum.java.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility class creating the executors used for the background work (MP3
+ * writes, prefetch). The executors have a bounded queue, the task is run
+ * by the calling thread when the queue is full, and their threads are daemon
+ * threads stopped when idle.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class BoundedExecutor {
+
+    /**
+     * Number of seconds an idle thread is kept alive.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 1L;
+
+    /**
+     * BoundedExecutor constructor.
+     */
+    private BoundedExecutor() {
+
+    }
+
+    /**
+     * Create a bounded executor.
+     *
+     * @param name    Name of the executor threads
+     * @param threads Maximum number of threads
+     * @return Bounded executor
+     */
+    static ThreadPoolExecutor create(final String name, final int threads) {
+        int size = Math.max(1, threads);
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(size * 2),
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
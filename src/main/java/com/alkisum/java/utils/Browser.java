@@ -6,12 +6,35 @@ import com.mpatric.mp3agic.UnsupportedTagException;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility class for browsing operations.
  *
  * @author Alkisum
- * @version 1.0
+ * @version 1.3
  * @since 1.0
  */
 public final class Browser {
@@ -24,158 +47,911 @@ public final class Browser {
     }
 
     /**
-     * Browse artist files.
+     * Album workers, null if the albums are processed on the main thread.
+     */
+    private static ExecutorService workers;
+
+    /**
+     * Order of the entries of a directory, by name so the walk does not
+     * depend on the file system.
+     */
+    private static final Comparator<Path> NAME_ORDER =
+            Comparator.comparing(path -> path.getFileName().toString());
+
+    /**
+     * Browse the artist directories contained in the given music directory.
+     * The artist and album directories are walked in the order of their
+     * names, one directory listing at a time, and the albums are processed as
+     * they are walked. A checkpoint is written after each processed album so
+     * an interrupted run can be resumed. When artists or albums are selected
+     * in the arguments, only their directories are resolved and listed. When
+     * the music directory is sharded, only the artists of the current shard
+     * are browsed.
      *
-     * @param artists List of artist files
+     * @param root Music directory
+     * @return false if the music directory does not contain any artist and no
+     * artist is selected, true otherwise, even if the current shard does not
+     * get any artist
      */
-    public static void browseArtists(final File[] artists) {
-        // browse artist files
-        for (File artist : artists) {
+    public static boolean browseArtists(final File root) {
+        // get the artists and albums selected in the arguments
+        Selection selection;
+        try {
+            selection = Selection.create(root);
+        } catch (IOException e) {
+            Terminal.printError("Cannot read " + Config.getPathsFrom(), 0);
+            e.printStackTrace();
+            return true;
+        }
+
+        // create the lock directory when the music directory is sharded
+        try {
+            Shard.start();
+        } catch (IOException e) {
+            Terminal.printError("Cannot create lock directory", 0);
+            e.printStackTrace();
+            return true;
+        }
 
-            if (Config.getArtist() != null
-                    && !Config.getArtist().equals(artist.getName())
-                    && Config.getAlbum() == null) {
-                continue;
+        // open the plan file in plan mode
+        if (Plan.isEnabled()) {
+            try {
+                Plan.start();
+            } catch (IOException e) {
+                Terminal.printError("Cannot write plan", 0);
+                e.printStackTrace();
+                return true;
             }
+        }
 
-            // print current artist name only if the album is not specified
-            if (Config.getAlbum() == null) {
-                Terminal.printInfo(artist.getName() + ":", 0);
+        // load the albums processed in the previous runs
+        ScanIndex.load();
+
+        // load the checkpoint to resume from
+        Checkpoint.start(!selection.isEmpty());
+
+        // start album workers if the albums have to be processed in parallel
+        if (Config.getThreads() > 1) {
+            startWorkers();
+        }
+
+        LibraryVisitor visitor = new LibraryVisitor(!selection.isEmpty());
+        boolean completed = false;
+        try {
+            if (selection.isEmpty()) {
+                // walk the artist directories and their album directories
+                walk(root.toPath(), 2, visitor);
+            } else {
+                // resolve the selected artists and albums
+                for (Selection.Target target : selection.getTargets()) {
+                    browseTarget(root.toPath(), target, visitor);
+                }
             }
+            completed = true;
+        } catch (IOException e) {
+            Terminal.printError("Cannot browse " + root.getAbsolutePath(), 0);
+            e.printStackTrace();
+        } finally {
+            // process the albums still waiting for the next albums
+            visitor.finish();
 
-            // check if artist file is a directory
-            if (artist.isFile()) {
-                FileSystem.openFileManager(
-                        artist.getName() + " is not a directory",
-                        artist.getParentFile().getAbsolutePath(), 0);
-                Terminal.askToContinue(0);
-                continue;
+            // wait for album workers to process the remaining albums
+            if (workers != null) {
+                stopWorkers();
             }
 
-            // list album files
-            File[] albums = artist.listFiles();
+            // nothing to resume once every album is processed
+            Checkpoint.finish(completed);
 
-            // check if artist directory contains album files
-            if (albums == null || albums.length == 0) {
-                FileSystem.openFileManager("No albums in directory",
-                        artist.getAbsolutePath(), 0);
-                Terminal.askToContinue(0);
-                continue;
-            }
+            // save the outcome of the processed albums
+            ScanIndex.save();
 
-            // browse album files
-            browseAlbums(albums);
+            // close the plan file
+            Plan.finish();
         }
+        // the missing selected directories are reported while browsing, a
+        // shard may not get any artist
+        return !selection.isEmpty() || visitor.artistCount > 0
+                || visitor.skippedCount > 0;
     }
 
     /**
-     * Browse album files.
+     * Browse the given selected artists and albums. A directory name is
+     * resolved directly, a directory is only listed when its entries are
+     * matched against a glob pattern or when all its albums are selected.
      *
-     * @param albums List of album files
+     * @param root    Music directory
+     * @param target  Selected artists and albums
+     * @param visitor Visitor of the artist and album directories
+     * @throws IOException The music directory cannot be listed
      */
-    private static void browseAlbums(final File[] albums) {
-        // browse album files
-        for (File album : albums) {
+    private static void browseTarget(final Path root,
+                                     final Selection.Target target,
+                                     final LibraryVisitor visitor)
+            throws IOException {
+        visitor.select(target);
 
-            if (Config.getAlbum() != null
-                    && !Config.getAlbum().equals(album.getName())) {
-                continue;
+        // the pattern is only compiled if no artist directory has its name
+        PathMatcher artistMatcher;
+        if (exists(root, target.getArtist())) {
+            artistMatcher = null;
+        } else {
+            artistMatcher = target.getArtistMatcher();
+        }
+        if (artistMatcher == null) {
+            browseTarget(root.resolve(target.getArtist()), target, visitor,
+                    true);
+            return;
+        }
+
+        // list the artist directories matching the pattern
+        try (DirectoryStream<Path> artists = Files.newDirectoryStream(root,
+                path -> artistMatcher.matches(path.getFileName()))) {
+            for (Path artist : artists) {
+                browseTarget(artist, target, visitor, false);
             }
+        }
+    }
 
-            // print current album name
-            Terminal.printInfo(album.getName() + ":", 1);
+    /**
+     * Browse the albums selected in the given artist directory.
+     *
+     * @param artist        Artist directory
+     * @param target        Selected artists and albums
+     * @param visitor       Visitor of the artist and album directories
+     * @param reportMissing true if a missing album has to be reported, false
+     *                      if the artist has been matched by a pattern and
+     *                      may not contain it
+     * @throws IOException The artist directory cannot be walked
+     */
+    private static void browseTarget(final Path artist,
+                                     final Selection.Target target,
+                                     final LibraryVisitor visitor,
+                                     final boolean reportMissing)
+            throws IOException {
+        // the artist belongs to another shard
+        if (!Shard.contains(artist.getFileName().toString())) {
+            return;
+        }
+
+        // the pattern is only compiled if no album directory has its name
+        if (target.getAlbum() == null || !exists(artist, target.getAlbum())
+                && target.getAlbumMatcher() != null) {
+            // list the albums of the artist, matched against the pattern
+            visitor.walkArtist(artist);
+        } else {
+            // resolve the album directory
+            visitor.visitAlbum(artist, artist.resolve(target.getAlbum()),
+                    reportMissing);
+        }
+    }
 
-            // check if album file is a directory
-            if (album.isFile()) {
-                FileSystem.openFileManager(
-                        album.getName() + " is not a directory",
-                        album.getParentFile().getAbsolutePath(), 1);
-                Terminal.askToContinue(1);
-                continue;
+    /**
+     * Walk the given directory like
+     * {@link Files#walkFileTree(Path, java.util.Set, int, FileVisitor)}
+     * following the links, the entries of each directory being visited in
+     * the order of their names. The names of a directory are listed before
+     * its entries are visited.
+     *
+     * @param directory Directory to walk
+     * @param maxDepth  Maximum number of directory levels to visit
+     * @param visitor   Visitor of the directories and files
+     * @return Result of the walk, {@link FileVisitResult#TERMINATE} if the
+     * walk has been stopped
+     * @throws IOException The visitor has thrown an exception
+     */
+    private static FileVisitResult walk(final Path directory,
+                                        final int maxDepth,
+                                        final FileVisitor<Path> visitor)
+            throws IOException {
+        // list the directory and sort its entries
+        BasicFileAttributes attributes;
+        List<Path> entries = new ArrayList<>();
+        try {
+            attributes = Files.readAttributes(directory,
+                    BasicFileAttributes.class);
+            try (DirectoryStream<Path> stream =
+                         Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    entries.add(entry);
+                }
             }
+        } catch (IOException e) {
+            return visitor.visitFileFailed(directory, e);
+        } catch (DirectoryIteratorException e) {
+            return visitor.visitFileFailed(directory, e.getCause());
+        }
+        entries.sort(NAME_ORDER);
 
-            // browse song files
-            browseSongs(album);
+        FileVisitResult result = visitor.preVisitDirectory(directory,
+                attributes);
+        if (result != FileVisitResult.CONTINUE) {
+            return result;
+        }
+        for (Path entry : entries) {
+            BasicFileAttributes entryAttributes = null;
+            IOException error = null;
+            try {
+                entryAttributes = Files.readAttributes(entry,
+                        BasicFileAttributes.class);
+            } catch (IOException e) {
+                error = e;
+            }
+            if (error != null) {
+                result = visitor.visitFileFailed(entry, error);
+            } else if (maxDepth > 1 && entryAttributes.isDirectory()) {
+                result = walk(entry, maxDepth - 1, visitor);
+            } else {
+                result = visitor.visitFile(entry, entryAttributes);
+            }
+            if (result == FileVisitResult.TERMINATE) {
+                return result;
+            }
+        }
+        return visitor.postVisitDirectory(directory, null);
+    }
 
-            // list song files
-            File[] files;
+    /**
+     * Check if the given directory contains a file with the given name, used
+     * to take a name containing glob characters literally when such a
+     * directory exists (e.g. "[1973] The Dark Side of the Moon").
+     *
+     * @param directory Directory to look into
+     * @param name      File name, possibly a glob pattern
+     * @return true if the file exists, false otherwise
+     */
+    private static boolean exists(final Path directory, final String name) {
+        try {
+            return Files.exists(directory.resolve(name));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Browse album file.
+     *
+     * @param album      Album file
+     * @param directory  true if the album file is a directory
+     * @param prefetched Snapshot of the album prepared in the background, null
+     *                   if the album has not been prefetched
+     * @return true if the album has been processed, false if it is left to
+     * another shard or to the next run
+     */
+    private static boolean browseAlbum(final File album,
+                                       final boolean directory,
+                                       final Future<AlbumSnapshot> prefetched) {
+        // print current album name
+        Terminal.printInfo(album.getName() + ":", 1);
+
+        // check if album file is a directory
+        if (!directory) {
+            FileSystem.openFileManager(
+                    album.getName() + " is not a directory",
+                    album.getParentFile().getAbsolutePath(), 1);
+            Terminal.askToContinue(1);
+            return true;
+        }
+
+        // skip album if another shard has processed it or is processing it
+        Shard.Lock lock = lockAlbum(album);
+        if (lock != Shard.Lock.ACQUIRED) {
+            return lock == Shard.Lock.DONE;
+        }
+
+        // mark the lock as done once the album is processed, release it if
+        // the album has not been processed
+        boolean done = false;
+        try {
+            processAlbum(album, prefetched);
+            done = true;
+        } finally {
+            releaseAlbum(album, done);
+        }
+        return true;
+    }
+
+    /**
+     * Process album directory locked by the current shard.
+     *
+     * @param album      Album directory
+     * @param prefetched Snapshot of the album prepared in the background, null
+     *                   if the album has not been prefetched
+     */
+    private static void processAlbum(final File album,
+                                     final Future<AlbumSnapshot> prefetched) {
+        // reset the issues printed by the previous album
+        Terminal.resetIssues();
+
+        // list song files once, the snapshot is passed to every step
+        AlbumSnapshot initial = null;
+        AlbumSnapshot snapshot;
+        try {
+            long start = Metrics.start(Metrics.Stage.LIST);
             try {
-                files = FileSystem.listSongs(album);
-            } catch (EmptyAlbumDirectoryException e) {
-                continue;
+                initial = AlbumSnapshot.of(album,
+                        Prefetcher.get(prefetched));
+            } finally {
+                Metrics.stop(start, initial == null
+                        ? 0 : initial.getEntries().size());
             }
 
-            if (Config.getAlbumPattern() == null
-                    || Config.getAlbumMask() == null) {
-                continue;
+            // skip album if it has not changed since its last clean process,
+            // printing what a processed album prints
+            if (ScanIndex.isUnchanged(initial)) {
+                if (Config.getAlbumPattern() != null
+                        && Config.getAlbumMask() != null) {
+                    Terminal.printConfirmation("[OK]", 2);
+                }
+                return;
             }
+
+            // browse song files
+            snapshot = browseSongs(initial);
+        } catch (EmptyAlbumDirectoryException e) {
+            return;
+        }
+
+        if (Config.getAlbumPattern() != null
+                && Config.getAlbumMask() != null) {
+            long start = Metrics.start(Metrics.Stage.RENAME);
             try {
                 // rename album directory
-                FileSystem.renameAlbumDirectory(files, album);
+                snapshot = FileSystem.renameAlbumDirectory(snapshot);
+                if (!snapshot.getDirectory().equals(album)
+                        && lockAlbum(snapshot.getDirectory())
+                        == Shard.Lock.ACQUIRED) {
+                    // lock the new name too, so another shard listing the
+                    // album under its new name skips it
+                    releaseAlbum(snapshot.getDirectory(), true);
+                }
             } catch (InvalidDataException | IOException
                     | UnsupportedTagException e) {
                 Terminal.printError("Cannot read MP3 tag", 1);
                 e.printStackTrace();
+            } finally {
+                Metrics.stop(start, 1);
             }
 
             // print message to notify the user that the album is valid
             Terminal.printConfirmation("[OK]", 2);
         }
+
+        // record the outcome of the album process
+        ScanIndex.update(initial, snapshot.getDirectory());
+    }
+
+    /**
+     * Lock the given album directory for the current shard.
+     *
+     * @param album Album directory
+     * @return ACQUIRED if the album can be processed, IN_PROGRESS or DONE if
+     * it is locked by another shard, null if it cannot be locked
+     */
+    private static Shard.Lock lockAlbum(final File album) {
+        try {
+            Shard.Lock lock = Shard.lock(album);
+            if (lock == Shard.Lock.IN_PROGRESS) {
+                Terminal.printInfo("Locked by another shard", 2);
+            } else if (lock == Shard.Lock.DONE) {
+                Terminal.printInfo("Already processed by a shard", 2);
+            }
+            return lock;
+        } catch (IOException e) {
+            Terminal.printError("Cannot lock album", 1);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Release the lock of the given album directory.
+     *
+     * @param album Album directory
+     * @param done  true if the album has been processed, false otherwise
+     */
+    private static void releaseAlbum(final File album, final boolean done) {
+        try {
+            Shard.release(album, done);
+        } catch (IOException e) {
+            Terminal.printError("Cannot release album lock", 1);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Start the album workers and the console thread handling their output.
+     * The albums waiting for a worker are bounded so the artist directories
+     * are not listed too far ahead.
+     */
+    private static void startWorkers() {
+        Console.start();
+        int threads = Config.getThreads();
+        workers = new ThreadPoolExecutor(threads, threads, 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 2),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Wait for the album workers to process the remaining albums, then stop
+     * the album workers and the console thread.
+     */
+    private static void stopWorkers() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers = null;
+        Console.stop();
     }
 
     /**
      * Browse song files.
      *
-     * @param album Album directory containing the songs
+     * @param snapshot Snapshot of the album directory containing the songs
+     * @return Album snapshot, updated by the operations done on the files
+     * @throws EmptyAlbumDirectoryException Empty album directory
      */
-    private static void browseSongs(final File album) {
-        // check song files
-        FileSystem.checkFiles(album);
+    private static AlbumSnapshot browseSongs(final AlbumSnapshot snapshot)
+            throws EmptyAlbumDirectoryException {
+        AlbumSnapshot album = snapshot;
+
+        // tag changes written once per MP3 file when the album is finished
+        PendingChanges changes = new PendingChanges();
 
-        // handle MP3 files
-        Mp3.handleMp3Files(album);
+        // check song files against the rules in one pass
+        long start = Metrics.start(Metrics.Stage.FILES);
+        try {
+            Rules.Report report = Rules.check(album);
+            FileSystem.checkFiles(album, report);
+
+            // handle MP3 files
+            album = Mp3.handleMp3Files(album, report);
+        } finally {
+            Metrics.stop(start, album.getEntries().size());
+        }
 
         // make sure tag frames are specified in configuration
         if (Config.getTagFrames() != null) {
+            start = Metrics.start(Metrics.Stage.TAGS);
             try {
                 // check MP3 tag
-                Mp3.checkMp3Tag(album);
+                album = Mp3.checkMp3Tag(album, changes);
             } catch (InvalidDataException | IOException
                     | UnsupportedTagException e) {
                 Terminal.printError("Cannot read MP3 tag", 1);
                 e.printStackTrace();
+            } finally {
+                Metrics.stop(start, album.getEntries().size());
             }
         }
 
         // make sure cover file name is specified in configuration
         if (Config.getCoverFileName() != null) {
+            start = Metrics.start(Metrics.Stage.COVER);
+            try {
+                // make sure obsolete cover file names are specified in
+                // configuration
+                if (Config.getObsoleteCoverFileName() != null) {
 
-            // make sure obsolete cover file names are specified in
-            // configuration
-            if (Config.getObsoleteCoverFileName() != null) {
+                    // replace cover file if necessary
+                    try {
+                        album = Cover.replaceCoverFile(album);
+                    } catch (IOException e) {
+                        Terminal.printError("Cannot replace cover file", 1);
+                        e.printStackTrace();
+                    }
+                }
+
+                // check if cover file exists
+                album = Cover.checkCoverExists(album);
 
-                // replace cover file if necessary
-                try {
-                    Cover.replaceCoverFile(album);
-                } catch (IOException | InterruptedException e) {
-                    Terminal.printError("Cannot replace cover file", 1);
-                    e.printStackTrace();
+                // process only JPEG cover files
+                if (album.contains(Config.getCoverFileName())
+                        && Cover.isJpg(Config.getCoverFileName())
+                        && Config.isProcessCoverEnabled()) {
+                    Cover.processCover(album, changes);
                 }
+            } finally {
+                Metrics.stop(start, album.getEntries().size());
             }
+        }
+
+        // write tag changes
+        start = Metrics.start(Metrics.Stage.WRITE);
+        try {
+            Mp3.commitChanges(changes);
+        } finally {
+            Metrics.stop(start, changes.getTracks().size());
+        }
+
+        // delete invalid files
+        start = Metrics.start(Metrics.Stage.DELETE);
+        AlbumSnapshot cleaned = null;
+        try {
+            cleaned = FileSystem.deleteInvalidFiles(album);
+        } finally {
+            Metrics.stop(start, cleaned == null ? 0
+                    : album.getEntries().size() - cleaned.getEntries().size());
+        }
+        return cleaned;
+    }
+
+    /**
+     * Visitor of the music directory: the entries at depth 1 are the artist
+     * directories and the entries at depth 2 are the album directories. When
+     * the albums are processed on the main thread, the steps of the walk are
+     * run a few albums behind the walk, the albums listed in between being
+     * prefetched in the background.
+     */
+    private static final class LibraryVisitor
+            extends SimpleFileVisitor<Path> {
+
+        /**
+         * Steps of the walk waiting for the albums listed before them.
+         */
+        private final Deque<Runnable> steps = new ArrayDeque<>();
+
+        /**
+         * Number of albums prefetched ahead of the album being processed, 0
+         * if the steps are run as soon as they are walked.
+         */
+        private final int prefetchAlbums;
+
+        /**
+         * Albums already visited when artists or albums are selected, so an
+         * album selected twice is processed once, null if the whole music
+         * directory is walked.
+         */
+        private final Set<File> visited;
+
+        /**
+         * Number of album steps waiting in the steps.
+         */
+        private int pendingAlbums;
+
+        /**
+         * Number of directories currently visited, 1 when visiting the music
+         * directory, 2 when visiting an artist directory.
+         */
+        private int depth;
 
-            // check if cover file exists
-            Cover.checkCoverExists(album);
+        /**
+         * Number of entries found in the music directory.
+         */
+        private int artistCount;
 
-            // process only JPEG cover files
-            File coverFile = Config.getCoverFile(album);
-            if (coverFile.exists()
-                    && Cover.isJpg(coverFile.getName())
-                    && Config.isProcessCoverEnabled()) {
-                Cover.processCover(album);
+        /**
+         * Number of entries of the music directory skipped because they
+         * belong to another shard or have been processed before the
+         * checkpoint.
+         */
+        private int skippedCount;
+
+        /**
+         * Number of entries found in the artist directory being visited.
+         */
+        private int albumCount;
+
+        /**
+         * Header of the artist directory being visited, printed by the album
+         * workers in front of the album output, null if albums are selected.
+         */
+        private String header;
+
+        /**
+         * Flag set to true if albums are selected, the artist headers are
+         * then not printed, false otherwise.
+         */
+        private boolean albumSelected;
+
+        /**
+         * Selected artists and albums, null if every album is selected.
+         */
+        private Selection.Target target;
+
+        /**
+         * LibraryVisitor constructor.
+         *
+         * @param selected true if artists or albums are selected, false if the
+         *                 whole music directory is walked
+         */
+        private LibraryVisitor(final boolean selected) {
+            if (workers == null) {
+                prefetchAlbums = Math.max(0, Config.getPrefetchAlbums());
+            } else {
+                prefetchAlbums = 0;
+            }
+            if (selected) {
+                visited = new HashSet<>();
+            } else {
+                visited = null;
             }
         }
 
-        // delete invalid files
-        FileSystem.deleteInvalidFiles(album);
+        @Override
+        public FileVisitResult preVisitDirectory(
+                final Path path, final BasicFileAttributes attributes) {
+            depth++;
+            if (depth == 2) {
+                // artist directory of another shard, lock directory or
+                // artist processed before the checkpoint
+                if (isSkipped(path)) {
+                    depth--;
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                // artist directory
+                artistCount++;
+                visitArtist(path.getFileName().toString());
+                albumCount = 0;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path path,
+                                         final BasicFileAttributes attributes) {
+            File file = path.toFile();
+            if (depth == 1 && isSkipped(path)) {
+                // artist file of another shard
+                return FileVisitResult.CONTINUE;
+            }
+            if (depth == 1) {
+                // artist file that is not a directory
+                artistCount++;
+                visitArtist(file.getName());
+                run(() -> {
+                    FileSystem.openFileManager(
+                            file.getName() + " is not a directory",
+                            file.getParentFile().getAbsolutePath(), 0);
+                    Terminal.askToContinue(0);
+                });
+            } else if (depth == 2) {
+                // album file, unless processed before the checkpoint
+                albumCount++;
+                if (isSelected(path) && !Checkpoint.isDone(
+                        path.getParent().getFileName().toString(),
+                        file.getName())) {
+                    visitAlbum(file, attributes.isDirectory());
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(final Path path,
+                                               final IOException e) {
+            if (depth == 0) {
+                // music directory cannot be listed: no artists
+                return FileVisitResult.TERMINATE;
+            }
+            String name = path.getFileName().toString();
+            if (depth == 1 && isSkipped(path)) {
+                // artist directory of another shard
+                return FileVisitResult.CONTINUE;
+            }
+            if (depth == 1) {
+                if (e instanceof NoSuchFileException) {
+                    // selected artist directory does not exist
+                    run(() -> Terminal.printWarning(name + " not found", 0));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                // artist directory cannot be listed: no albums
+                artistCount++;
+                visitArtist(name);
+                run(() -> {
+                    FileSystem.openFileManager("No albums in directory",
+                            path.toFile().getAbsolutePath(), 0);
+                    Terminal.askToContinue(0);
+                });
+            } else {
+                // album attributes cannot be read: let the album process
+                // report it when listing the album
+                albumCount++;
+                if (isSelected(path)) {
+                    visitAlbum(path.toFile(), true);
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(final Path path,
+                                                  final IOException e) {
+            if (depth == 2 && albumCount == 0) {
+                // check if artist directory contains album files
+                run(() -> {
+                    FileSystem.openFileManager("No albums in directory",
+                            path.toFile().getAbsolutePath(), 0);
+                    Terminal.askToContinue(0);
+                });
+            }
+            depth--;
+            return FileVisitResult.CONTINUE;
+        }
+
+        /**
+         * @param artist Entry listed in the music directory
+         * @return true if the entry is an artist of another shard, an artist
+         * processed before the checkpoint or the lock directory, false
+         * otherwise
+         */
+        private boolean isSkipped(final Path artist) {
+            String name = artist.getFileName().toString();
+            if (!Shard.contains(name) || Checkpoint.isDone(name)) {
+                skippedCount++;
+                return true;
+            }
+            return Shard.isLockDirectory(artist);
+        }
+
+        /**
+         * Select the albums visited in the next artist directories.
+         *
+         * @param target Selected artists and albums
+         */
+        private void select(final Selection.Target target) {
+            this.target = target;
+            albumSelected = target.getAlbum() != null;
+        }
+
+        /**
+         * @param album Album listed in an artist directory
+         * @return true if the album matches the selected albums, false
+         * otherwise
+         */
+        private boolean isSelected(final Path album) {
+            if (target == null || target.getAlbumMatcher() == null) {
+                return true;
+            }
+            return target.getAlbumMatcher().matches(album.getFileName());
+        }
+
+        /**
+         * Walk the albums of the given artist directory.
+         *
+         * @param artist Artist directory
+         * @throws IOException The artist directory cannot be walked
+         */
+        private void walkArtist(final Path artist) throws IOException {
+            // the artist directory is visited as if the music directory was
+            // walked
+            depth = 1;
+            try {
+                walk(artist, 1, this);
+            } finally {
+                depth = 0;
+            }
+        }
+
+        /**
+         * Visit the given album directory without listing its artist
+         * directory.
+         *
+         * @param artist        Artist directory
+         * @param album         Album directory
+         * @param reportMissing true if a missing album has to be reported
+         */
+        private void visitAlbum(final Path artist, final Path album,
+                                final boolean reportMissing) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(album,
+                        BasicFileAttributes.class);
+            } catch (IOException e) {
+                if (reportMissing) {
+                    String name = artist.getFileName() + File.separator
+                            + album.getFileName();
+                    run(() -> Terminal.printWarning(name + " not found", 0));
+                }
+                return;
+            }
+            artistCount++;
+            visitArtist(artist.getFileName().toString());
+            visitAlbum(album.toFile(), attributes.isDirectory());
+        }
+
+        /**
+         * Print the artist header, only if no album is selected.
+         *
+         * @param artist Artist name
+         */
+        private void visitArtist(final String artist) {
+            // the album workers print the header in front of their own output
+            header = null;
+            if (!albumSelected) {
+                String artistHeader = artist + ":";
+                header = artistHeader;
+                if (workers == null) {
+                    run(() -> Terminal.printInfo(artistHeader, 0));
+                }
+            }
+        }
+
+        /**
+         * Browse album file, on an album worker if the albums are processed
+         * in parallel, after the albums prefetched ahead of it otherwise.
+         *
+         * @param album     Album file
+         * @param directory true if the album file is a directory
+         */
+        private void visitAlbum(final File album, final boolean directory) {
+            // an album selected twice is processed once
+            if (visited != null && !visited.add(album.getAbsoluteFile())) {
+                return;
+            }
+
+            // the checkpoint follows the albums in the order of the walk
+            long order = Checkpoint.begin(album);
+
+            if (workers != null) {
+                // process album on an album worker, the output of the album
+                // is printed as one block once the album is processed
+                String albumHeader = header;
+                workers.execute(() -> {
+                    Console.beginBlock(albumHeader);
+                    try {
+                        if (browseAlbum(album, directory, null)) {
+                            Checkpoint.complete(order);
+                        }
+                    } finally {
+                        Console.endBlock();
+                    }
+                });
+                return;
+            }
+
+            if (prefetchAlbums == 0) {
+                if (browseAlbum(album, directory, null)) {
+                    Checkpoint.complete(order);
+                }
+                return;
+            }
+
+            // prepare the album in the background, process it once the next
+            // albums are listed
+            Future<AlbumSnapshot> prefetched = null;
+            if (directory) {
+                prefetched = Prefetcher.submit(album);
+            }
+            Future<AlbumSnapshot> snapshot = prefetched;
+            pendingAlbums++;
+            steps.add(() -> {
+                pendingAlbums--;
+                if (browseAlbum(album, directory, snapshot)) {
+                    Checkpoint.complete(order);
+                }
+            });
+            while (pendingAlbums > prefetchAlbums) {
+                steps.poll().run();
+            }
+        }
+
+        /**
+         * Run the given step of the walk, after the steps waiting for the
+         * albums prefetched.
+         *
+         * @param step Step to run
+         */
+        private void run(final Runnable step) {
+            if (steps.isEmpty()) {
+                step.run();
+            } else {
+                steps.add(step);
+            }
+        }
+
+        /**
+         * Run the steps waiting at the end of the walk.
+         */
+        private void finish() {
+            while (!steps.isEmpty()) {
+                steps.poll().run();
+            }
+        }
     }
 }
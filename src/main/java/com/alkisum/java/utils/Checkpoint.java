@@ -0,0 +1,357 @@
+package com.alkisum.java.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Progress checkpoint of the walk of the music directory, allowing an
+ * interrupted run to be resumed with the --resume argument. The artists and
+ * albums are walked in the order of their names, the checkpoint records the
+ * last album such that every album walked before it has been processed. It
+ * is written after each processed album to a temporary file which is then
+ * moved to the checkpoint file, so an interrupted run never leaves a
+ * truncated checkpoint. The checkpoint is deleted once the whole music
+ * directory is processed.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class Checkpoint {
+
+    /**
+     * Checkpoint file name.
+     */
+    private static final String CHECKPOINT_FILE_NAME =
+            "discocleaner.checkpoint";
+
+    /**
+     * Albums walked and not yet followed by the checkpoint, mapped by the
+     * order in which they have been walked.
+     */
+    private static final TreeMap<Long, Album> ALBUMS = new TreeMap<>();
+
+    /**
+     * Lock held while the checkpoint is written, so the walk and the album
+     * workers only wait for the class lock while the albums are recorded.
+     */
+    private static final Object WRITE_LOCK = new Object();
+
+    /**
+     * Flag set to true if the checkpoint is written during the run, false
+     * otherwise.
+     */
+    private static boolean enabled;
+
+    /**
+     * Hash of the configuration, written in the checkpoint.
+     */
+    private static String configHash;
+
+    /**
+     * Artist of the checkpoint the run is resumed from, null if the run is
+     * not resumed.
+     */
+    private static String resumeArtist;
+
+    /**
+     * Album of the checkpoint the run is resumed from, null if the run is not
+     * resumed.
+     */
+    private static String resumeAlbum;
+
+    /**
+     * Order of the next album walked.
+     */
+    private static long nextOrder;
+
+    /**
+     * Last album processed in order and not written yet, null if the
+     * checkpoint is up to date.
+     */
+    private static Album pending;
+
+    /**
+     * Checkpoint constructor.
+     */
+    private Checkpoint() {
+
+    }
+
+    /**
+     * Start writing the checkpoint and load the checkpoint to resume from if
+     * the --resume argument is given. The checkpoint is only written when the
+     * whole music directory is walked, not in plan mode.
+     *
+     * @param selected true if artists or albums are selected in the
+     *                 arguments, false if the whole music directory is walked
+     */
+    static synchronized void start(final boolean selected) {
+        enabled = !selected && !Plan.isEnabled();
+        configHash = ScanIndex.hashConfig();
+        resumeArtist = null;
+        resumeAlbum = null;
+        ALBUMS.clear();
+        nextOrder = 0;
+        pending = null;
+        if (!Config.isResume()) {
+            return;
+        }
+        if (!enabled) {
+            Terminal.printWarning("--resume is ignored when artists or "
+                    + "albums are selected or in plan mode", 0);
+            return;
+        }
+        load();
+    }
+
+    /**
+     * Load the checkpoint to resume from. The checkpoint is ignored if it
+     * has been written with other configuration settings.
+     */
+    @SuppressWarnings("unchecked")
+    private static void load() {
+        File checkpointFile = getCheckpointFile();
+        if (!checkpointFile.exists()) {
+            Terminal.printWarning("No checkpoint, starting from the first "
+                    + "artist", 0);
+            return;
+        }
+        Map<String, Object> checkpoint;
+        try {
+            Object json = Json.parse(new String(
+                    Files.readAllBytes(checkpointFile.toPath()),
+                    StandardCharsets.UTF_8));
+            if (!(json instanceof Map)) {
+                throw new IOException("The checkpoint is not an object");
+            }
+            checkpoint = (Map<String, Object>) json;
+        } catch (IOException e) {
+            Terminal.printError("Cannot read " + checkpointFile.getName(), 0);
+            e.printStackTrace();
+            return;
+        }
+        if (!Config.getPath().equals(checkpoint.get("path"))
+                || !configHash.equals(checkpoint.get("configHash"))) {
+            Terminal.printWarning("The configuration has changed since the "
+                    + "checkpoint, starting from the first artist", 0);
+            return;
+        }
+        if (checkpoint.get("artist") instanceof String
+                && checkpoint.get("album") instanceof String) {
+            resumeArtist = (String) checkpoint.get("artist");
+            resumeAlbum = (String) checkpoint.get("album");
+            Terminal.printInfo("Resuming after " + resumeArtist
+                    + File.separator + resumeAlbum, 0);
+        }
+    }
+
+    /**
+     * Check if the given artist has been processed before the checkpoint the
+     * run is resumed from.
+     *
+     * @param artist Artist directory name
+     * @return true if every album of the artist has been processed, false
+     * otherwise
+     */
+    static synchronized boolean isDone(final String artist) {
+        return resumeArtist != null && artist.compareTo(resumeArtist) < 0;
+    }
+
+    /**
+     * Check if the given album has been processed before the checkpoint the
+     * run is resumed from.
+     *
+     * @param artist Artist directory name
+     * @param album  Album directory name
+     * @return true if the album has been processed, false otherwise
+     */
+    static synchronized boolean isDone(final String artist,
+                                       final String album) {
+        if (resumeArtist == null) {
+            return false;
+        }
+        int order = artist.compareTo(resumeArtist);
+        return order < 0 || order == 0 && album.compareTo(resumeAlbum) <= 0;
+    }
+
+    /**
+     * Record the given album as walked, in the order of the walk.
+     *
+     * @param album Album directory
+     * @return Order of the album to give to {@link #complete(long)}, -1 if
+     * the checkpoint is not written
+     */
+    static synchronized long begin(final File album) {
+        if (!enabled) {
+            return -1;
+        }
+        long order = nextOrder++;
+        ALBUMS.put(order, new Album(album.getParentFile().getName(),
+                album.getName()));
+        return order;
+    }
+
+    /**
+     * Record the given album as processed and write the checkpoint if every
+     * album walked before it has been processed too. The checkpoint is
+     * written outside the class lock, a worker finding a later checkpoint
+     * pending writes that one instead.
+     *
+     * @param order Order of the album returned by {@link #begin(File)}
+     */
+    static void complete(final long order) {
+        synchronized (Checkpoint.class) {
+            Album album = ALBUMS.get(order);
+            if (album == null) {
+                return;
+            }
+            album.done = true;
+
+            // move the checkpoint to the last album processed in order
+            Album last = null;
+            while (!ALBUMS.isEmpty() && ALBUMS.firstEntry().getValue().done) {
+                last = ALBUMS.pollFirstEntry().getValue();
+            }
+            if (last == null || !enabled) {
+                return;
+            }
+            pending = last;
+        }
+
+        // write the last pending checkpoint, already written if null
+        synchronized (WRITE_LOCK) {
+            Album last;
+            synchronized (Checkpoint.class) {
+                last = pending;
+                pending = null;
+            }
+            if (last != null) {
+                write(last);
+            }
+        }
+    }
+
+    /**
+     * Delete the checkpoint if the whole music directory has been processed.
+     *
+     * @param completed true if the walk of the music directory has completed,
+     *                  false if it has been stopped
+     */
+    static void finish(final boolean completed) {
+        // wait for the checkpoint being written
+        synchronized (WRITE_LOCK) {
+            synchronized (Checkpoint.class) {
+                if (!enabled || !completed || !ALBUMS.isEmpty()) {
+                    // keep the checkpoint to resume from
+                    return;
+                }
+            }
+            delete();
+        }
+    }
+
+    /**
+     * Delete the checkpoint file.
+     */
+    private static void delete() {
+        try {
+            Files.deleteIfExists(getCheckpointFile().toPath());
+        } catch (IOException e) {
+            Terminal.printError("Cannot delete "
+                    + getCheckpointFile().getName(), 0);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return Checkpoint file, one per shard
+     */
+    private static File getCheckpointFile() {
+        return new File(Shard.getFileName(CHECKPOINT_FILE_NAME));
+    }
+
+    /**
+     * Write the checkpoint. The temporary file is forced to the disk before
+     * being moved to the checkpoint file, so the checkpoint survives a
+     * reboot.
+     *
+     * @param album Last album processed in order
+     */
+    private static void write(final Album album) {
+        File checkpointFile = getCheckpointFile();
+        File tmpFile = new File(checkpointFile.getPath() + "_tmp");
+        String json = "{\"artist\":" + Json.quote(album.artist)
+                + ",\"album\":" + Json.quote(album.album)
+                + ",\"path\":" + Json.quote(Config.getPath())
+                + ",\"configHash\":" + Json.quote(configHash) + "}\n";
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(
+                        json.getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            try {
+                Files.move(tmpFile.toPath(), checkpointFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), checkpointFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // stop writing the checkpoint for the rest of the run
+            Terminal.printError("Cannot write " + checkpointFile.getName(), 0);
+            e.printStackTrace();
+            synchronized (Checkpoint.class) {
+                enabled = false;
+            }
+        }
+    }
+
+    /**
+     * Album walked and not yet followed by the checkpoint.
+     */
+    private static final class Album {
+
+        /**
+         * Artist directory name.
+         */
+        private final String artist;
+
+        /**
+         * Album directory name.
+         */
+        private final String album;
+
+        /**
+         * Flag set to true once the album has been processed.
+         */
+        private boolean done;
+
+        /**
+         * Album constructor.
+         *
+         * @param artist Artist directory name
+         * @param album  Album directory name
+         */
+        private Album(final String artist, final String album) {
+            this.artist = artist;
+            this.album = album;
+        }
+    }
+}
@@ -7,14 +7,18 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 /**
  * Utility class for the application configuration.
  *
  * @author Alkisum
- * @version 1.1
+ * @version 1.3
  * @since 1.0
  */
 public final class Config {
@@ -32,11 +36,47 @@ public final class Config {
     /**
      * Add arguments to configuration.
      *
-     * @param arguments Map of arguments passed when starting the program
+     * @param arguments Map of arguments passed when starting the program,
+     *                  the values of a repeated argument are separated by
+     *                  line breaks
      */
     public static void addArguments(final Map<String, String> arguments) {
-        config.artist = arguments.get("artist");
-        config.album = arguments.get("album");
+        config.artists = getValues(arguments.get("artist"));
+        config.albums = getValues(arguments.get("album"));
+        config.pathsFrom = arguments.get("paths-from");
+        String threads = arguments.get("threads");
+        if (threads != null) {
+            config.threads = Integer.parseInt(threads);
+        }
+        config.resume = arguments.containsKey("resume");
+        config.quiet = arguments.containsKey("quiet");
+        String format = arguments.get("format");
+        if (format != null) {
+            config.outputFormat = format;
+        }
+        config.planFile = arguments.get("plan");
+        config.applyFile = arguments.get("apply");
+        String shard = arguments.get("shard");
+        if (shard != null) {
+            String[] shardParams = shard.split("/");
+            config.shardIndex = Integer.parseInt(shardParams[0]);
+            config.shardCount = Integer.parseInt(shardParams[1]);
+        }
+        config.mergedMetrics = getValues(arguments.get("merge-metrics"));
+    }
+
+    /**
+     * Split the values of a repeated argument.
+     *
+     * @param values Values separated by line breaks, null if the argument is
+     *               not given
+     * @return Values of the argument, empty if the argument is not given
+     */
+    private static List<String> getValues(final String values) {
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(values.split("\n"));
     }
 
     /**
@@ -65,10 +105,8 @@ public final class Config {
     private String albumPattern = null;
 
     /**
-     * Mask to use for album directory name.
-     * %a = artist
-     * %b = album
-     * %y = year
+     * Mask to use for album directory name, see {@link AlbumMask} for the
+     * placeholders.
      */
     private String albumMask = null;
 
@@ -82,6 +120,24 @@ public final class Config {
      */
     private boolean customTagAllowed = true;
 
+    /**
+     * Number of padding bytes reserved after the ID3v2 tag when a MP3 file has
+     * to be rewritten because its tag grows.
+     */
+    private int tagPadding = 2048;
+
+    /**
+     * Number of MP3 files written in parallel when writing the tag changes of
+     * an album.
+     */
+    private int writerThreads = 4;
+
+    /**
+     * Number of albums prepared in the background ahead of the album being
+     * processed, when the albums are processed on the main thread.
+     */
+    private int prefetchAlbums = 2;
+
     /**
      * How the cover file should be named.
      */
@@ -93,12 +149,28 @@ public final class Config {
      */
     private String[] obsoleteCoverFileName = null;
 
+    /**
+     * Extensions of the files allowed in the album directories, in addition
+     * to the cover file.
+     */
+    private String[] allowedExtensions = {"mp3"};
+
+    /**
+     * Extra validation rules (target and pattern) mapped by rule name.
+     */
+    private final Map<String, String> rules = new TreeMap<>();
+
     /**
      * Only for jpeg: true if the cover should be processed (convert progressive
      * to baseline, load image to MP3 if different).
      */
     private boolean processCoverEnabled = false;
 
+    /**
+     * Quality (1 to 100) of the JPEG covers written when converting covers.
+     */
+    private int coverQuality = 92;
+
     /**
      * Flag set to true if no confirmation is asked to the user,
      * false otherwise.
@@ -117,6 +189,47 @@ public final class Config {
      */
     private boolean showLogEnabled = false;
 
+    /**
+     * Maximum size of the log file in megabytes. When the log file reaches
+     * this size, it is rotated. The log file is never rotated if it is 0.
+     */
+    private int logMaxSize = 10;
+
+    /**
+     * Number of rotated log files kept next to the log file.
+     */
+    private int logMaxFiles = 3;
+
+    /**
+     * Flag set to true if the albums processed without any issue in a previous
+     * run are skipped as long as they do not change, false otherwise.
+     */
+    private boolean indexEnabled = false;
+
+    /**
+     * Flag set to true if the timing and counters of each stage have to be
+     * printed at the end of the process, false otherwise.
+     */
+    private boolean metricsEnabled = false;
+
+    /**
+     * JSON file to write the timing and counters of each stage to, null if
+     * the metrics are only printed.
+     */
+    private String metricsFile = null;
+
+    /**
+     * Directory containing the album lock files taken by the shards, null to
+     * use a hidden directory of the music directory.
+     */
+    private String lockDirectory = null;
+
+    /**
+     * Age in hours after which an album lock left by a previous run is taken
+     * over, 0 if the locks never expire.
+     */
+    private int lockMaxAge = 12;
+
     /**
      * Flag set to true if the audio quality information should be printed for
      * each MP3 file, false otherwise.
@@ -134,16 +247,77 @@ public final class Config {
     private int samplerateMin = 44100;
 
     /**
-     * Artist directory name given in --artist argument. If this attribute is
-     * specified, only this artist will be processed.
+     * Artist directory names or glob patterns given in --artist arguments. If
+     * this attribute is not empty, only these artists will be processed.
      */
-    private String artist = null;
+    private List<String> artists = Collections.emptyList();
 
     /**
-     * Album directory name given in --album argument. If this attribute is
-     * specified, only this artist will be processed.
+     * Album directory names or glob patterns given in --album arguments. If
+     * this attribute is not empty, only these albums will be processed.
      */
-    private String album = null;
+    private List<String> albums = Collections.emptyList();
+
+    /**
+     * File listing the artist and album directories to process, given in
+     * --paths-from argument, null if not given.
+     */
+    private String pathsFrom = null;
+
+    /**
+     * Number of threads given in --threads argument, used to process the
+     * albums in parallel.
+     */
+    private int threads = 1;
+
+    /**
+     * Flag set to true if the --quiet argument is given, only the errors,
+     * warnings and questions are then printed, false otherwise.
+     */
+    private boolean quiet = false;
+
+    /**
+     * Format of the messages printed on the console given in --format
+     * argument: "text" or "ndjson" (one JSON object per message).
+     */
+    private String outputFormat = "text";
+
+    /**
+     * Flag set to true if the --resume argument is given, the run then
+     * continues from the checkpoint of the previous run, false otherwise.
+     */
+    private boolean resume = false;
+
+    /**
+     * Plan file given in --plan argument. If this attribute is specified, the
+     * actions are written to the plan file instead of being executed.
+     */
+    private String planFile = null;
+
+    /**
+     * Plan file given in --apply argument. If this attribute is specified,
+     * the actions written in the plan file are executed instead of browsing
+     * the music directory.
+     */
+    private String applyFile = null;
+
+    /**
+     * Index of the shard given in --shard argument, starting at 1.
+     */
+    private int shardIndex = 1;
+
+    /**
+     * Number of shards given in --shard argument, 1 if the whole music
+     * directory is processed.
+     */
+    private int shardCount = 1;
+
+    /**
+     * Metrics files given in --merge-metrics arguments. If this attribute is
+     * not empty, the metrics files are merged instead of browsing the music
+     * directory.
+     */
+    private List<String> mergedMetrics = Collections.emptyList();
 
     /**
      * Config constructor.
@@ -175,6 +349,11 @@ public final class Config {
 
         // load properties file
         loadProperties();
+
+        // compile the validation rules and the album mask once for the whole
+        // process
+        Rules.compile();
+        AlbumMask.compile();
     }
 
     /**
@@ -237,6 +416,24 @@ public final class Config {
                         customTagAllowed);
             }
 
+            // load tag padding
+            String tagPadding = prop.getProperty("tag.padding");
+            if (tagPadding != null && !tagPadding.isEmpty()) {
+                config.tagPadding = Integer.parseInt(tagPadding);
+            }
+
+            // load writer threads
+            String writerThreads = prop.getProperty("writer.threads");
+            if (writerThreads != null && !writerThreads.isEmpty()) {
+                config.writerThreads = Integer.parseInt(writerThreads);
+            }
+
+            // load prefetch albums
+            String prefetchAlbums = prop.getProperty("prefetch.albums");
+            if (prefetchAlbums != null && !prefetchAlbums.isEmpty()) {
+                config.prefetchAlbums = Integer.parseInt(prefetchAlbums);
+            }
+
             // load cover file name
             String coverFileName = prop.getProperty("cover.file.name");
             if (coverFileName != null && !coverFileName.isEmpty()) {
@@ -251,6 +448,21 @@ public final class Config {
                 config.obsoleteCoverFileName = obsoleteCoverFileName.split(",");
             }
 
+            // load allowed extensions
+            String allowedExtensions = prop.getProperty("allowed.extensions");
+            if (allowedExtensions != null && !allowedExtensions.isEmpty()) {
+                config.allowedExtensions = allowedExtensions.split(",");
+            }
+
+            // load extra validation rules
+            config.rules.clear();
+            for (String name : prop.stringPropertyNames()) {
+                String rule = prop.getProperty(name);
+                if (name.startsWith("rule.") && !rule.isEmpty()) {
+                    config.rules.put(name.substring(5), rule);
+                }
+            }
+
             // load process cover enabled flag
             String processCoverEnabled = prop.getProperty(
                     "process.cover.enabled");
@@ -259,6 +471,12 @@ public final class Config {
                         processCoverEnabled);
             }
 
+            // load cover quality
+            String coverQuality = prop.getProperty("cover.quality");
+            if (coverQuality != null && !coverQuality.isEmpty()) {
+                config.coverQuality = Integer.parseInt(coverQuality);
+            }
+
             // load force enabled flag
             String forceEnabled = prop.getProperty("force.enabled");
             if (forceEnabled != null && !forceEnabled.isEmpty()) {
@@ -277,6 +495,48 @@ public final class Config {
                 config.showLogEnabled = Boolean.parseBoolean(showLogEnabled);
             }
 
+            // load log max size
+            String logMaxSize = prop.getProperty("log.max.size");
+            if (logMaxSize != null && !logMaxSize.isEmpty()) {
+                config.logMaxSize = Integer.parseInt(logMaxSize);
+            }
+
+            // load log max files
+            String logMaxFiles = prop.getProperty("log.max.files");
+            if (logMaxFiles != null && !logMaxFiles.isEmpty()) {
+                config.logMaxFiles = Integer.parseInt(logMaxFiles);
+            }
+
+            // load index enabled flag
+            String indexEnabled = prop.getProperty("index.enabled");
+            if (indexEnabled != null && !indexEnabled.isEmpty()) {
+                config.indexEnabled = Boolean.parseBoolean(indexEnabled);
+            }
+
+            // load metrics enabled flag
+            String metricsEnabled = prop.getProperty("metrics.enabled");
+            if (metricsEnabled != null && !metricsEnabled.isEmpty()) {
+                config.metricsEnabled = Boolean.parseBoolean(metricsEnabled);
+            }
+
+            // load metrics file
+            String metricsFile = prop.getProperty("metrics.file");
+            if (metricsFile != null && !metricsFile.isEmpty()) {
+                config.metricsFile = metricsFile;
+            }
+
+            // load lock directory
+            String lockDirectory = prop.getProperty("lock.directory");
+            if (lockDirectory != null && !lockDirectory.isEmpty()) {
+                config.lockDirectory = lockDirectory;
+            }
+
+            // load lock max age
+            String lockMaxAge = prop.getProperty("lock.max.age");
+            if (lockMaxAge != null && !lockMaxAge.isEmpty()) {
+                config.lockMaxAge = Integer.parseInt(lockMaxAge);
+            }
+
             // load print print audio quality enabled flag
             String printAudioQualityEnabled = prop.getProperty(
                     "print.audio.quality.enabled");
@@ -356,6 +616,30 @@ public final class Config {
         return config.customTagAllowed;
     }
 
+    /**
+     * @return Number of padding bytes reserved after the ID3v2 tag when a MP3
+     * file has to be rewritten because its tag grows
+     */
+    static int getTagPadding() {
+        return config.tagPadding;
+    }
+
+    /**
+     * @return Number of MP3 files written in parallel when writing the tag
+     * changes of an album
+     */
+    static int getWriterThreads() {
+        return config.writerThreads;
+    }
+
+    /**
+     * @return Number of albums prepared in the background ahead of the album
+     * being processed, when the albums are processed on the main thread
+     */
+    static int getPrefetchAlbums() {
+        return config.prefetchAlbums;
+    }
+
     /**
      * @return How the cover file should be named
      */
@@ -371,6 +655,20 @@ public final class Config {
         return config.obsoleteCoverFileName;
     }
 
+    /**
+     * @return Extensions of the files allowed in the album directories
+     */
+    static String[] getAllowedExtensions() {
+        return config.allowedExtensions;
+    }
+
+    /**
+     * @return Extra validation rules (target and pattern) mapped by rule name
+     */
+    static Map<String, String> getRules() {
+        return config.rules;
+    }
+
     /**
      * @return true if the cover should be processed (convert progressive
      * to baseline, load image to MP3 if different)
@@ -380,10 +678,20 @@ public final class Config {
     }
 
     /**
-     * @return true if no confirmation is asked to the user, false otherwise
+     * @return Quality (1 to 100) of the JPEG covers written when converting
+     * covers
+     */
+    static int getCoverQuality() {
+        return config.coverQuality;
+    }
+
+    /**
+     * @return true if no confirmation is asked to the user, false otherwise.
+     * No confirmation is asked in plan mode, the actions are only written to
+     * the plan
      */
     static boolean isForceEnabled() {
-        return config.forceEnabled;
+        return config.forceEnabled || config.planFile != null;
     }
 
     /**
@@ -402,6 +710,60 @@ public final class Config {
         return config.showLogEnabled;
     }
 
+    /**
+     * @return Maximum size of the log file in megabytes, 0 if the log file is
+     * never rotated
+     */
+    static int getLogMaxSize() {
+        return config.logMaxSize;
+    }
+
+    /**
+     * @return Number of rotated log files kept next to the log file
+     */
+    static int getLogMaxFiles() {
+        return config.logMaxFiles;
+    }
+
+    /**
+     * @return true if the albums processed without any issue in a previous run
+     * are skipped as long as they do not change, false otherwise
+     */
+    static boolean isIndexEnabled() {
+        return config.indexEnabled;
+    }
+
+    /**
+     * @return true if the timing and counters of each stage have to be printed
+     * at the end of the process, false otherwise
+     */
+    static boolean isMetricsEnabled() {
+        return config.metricsEnabled;
+    }
+
+    /**
+     * @return JSON file to write the metrics to, null if none
+     */
+    static String getMetricsFile() {
+        return config.metricsFile;
+    }
+
+    /**
+     * @return Directory containing the album lock files, null to use a hidden
+     * directory of the music directory
+     */
+    static String getLockDirectory() {
+        return config.lockDirectory;
+    }
+
+    /**
+     * @return Age in hours after which an album lock left by a previous run
+     * is taken over, 0 if the locks never expire
+     */
+    static int getLockMaxAge() {
+        return config.lockMaxAge;
+    }
+
     /**
      * @return true if the audio quality information should be printed for each
      * MP3 file, false otherwise.
@@ -427,17 +789,91 @@ public final class Config {
     }
 
     /**
-     * @return Artist directory name given in --artist argument
+     * @return Artist directory names or glob patterns given in --artist
+     * arguments
+     */
+    static List<String> getArtists() {
+        return config.artists;
+    }
+
+    /**
+     * @return Album directory names or glob patterns given in --album
+     * arguments
+     */
+    static List<String> getAlbums() {
+        return config.albums;
+    }
+
+    /**
+     * @return File listing the artist and album directories to process, given
+     * in --paths-from argument, null if not given
+     */
+    static String getPathsFrom() {
+        return config.pathsFrom;
+    }
+
+    /**
+     * @return Number of threads given in --threads argument
+     */
+    static int getThreads() {
+        return config.threads;
+    }
+
+    /**
+     * @return true if the --quiet argument is given, false otherwise
+     */
+    static boolean isQuiet() {
+        return config.quiet;
+    }
+
+    /**
+     * @return Format of the messages printed on the console given in
+     * --format argument, "text" by default
+     */
+    static String getOutputFormat() {
+        return config.outputFormat;
+    }
+
+    /**
+     * @return true if the --resume argument is given, false otherwise
+     */
+    static boolean isResume() {
+        return config.resume;
+    }
+
+    /**
+     * @return Plan file given in --plan argument
+     */
+    static String getPlanFile() {
+        return config.planFile;
+    }
+
+    /**
+     * @return Plan file given in --apply argument
+     */
+    public static String getApplyFile() {
+        return config.applyFile;
+    }
+
+    /**
+     * @return Index of the shard given in --shard argument, starting at 1
+     */
+    static int getShardIndex() {
+        return config.shardIndex;
+    }
+
+    /**
+     * @return Number of shards given in --shard argument, 1 if not given
      */
-    static String getArtist() {
-        return config.artist;
+    static int getShardCount() {
+        return config.shardCount;
     }
 
     /**
-     * @return Album directory name given in --album argument
+     * @return Metrics files given in --merge-metrics arguments
      */
-    static String getAlbum() {
-        return config.album;
+    public static List<String> getMergedMetrics() {
+        return config.mergedMetrics;
     }
 
     /**
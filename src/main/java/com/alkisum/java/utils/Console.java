@@ -0,0 +1,341 @@
+package com.alkisum.java.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utility class funneling the output and the user inputs of the album workers
+ * to a single console thread. The output is written to the {@link Sink}
+ * specified in the arguments.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class Console {
+
+    /**
+     * Block of output buffered by the album worker running on the current
+     * thread.
+     */
+    private static final ThreadLocal<Block> BLOCK = new ThreadLocal<>();
+
+    /**
+     * Console thread, null if the albums are processed on the main thread.
+     */
+    private static ExecutorService console;
+
+    /**
+     * Sink the output is written to, created when the first message is
+     * printed.
+     */
+    private static Sink sink;
+
+    /**
+     * Header of the last block printed on the console. Only accessed from the
+     * console thread.
+     */
+    private static String lastHeader;
+
+    /**
+     * Last block printed on the console. Only accessed from the console
+     * thread.
+     */
+    private static Block lastBlock;
+
+    /**
+     * Console constructor.
+     */
+    private Console() {
+
+    }
+
+    /**
+     * Start the console thread. From now on, the output and the user inputs
+     * are handled by the console thread only.
+     */
+    static void start() {
+        console = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "console");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Wait for the console thread to print the pending blocks and stop it.
+     */
+    static void stop() {
+        if (console == null) {
+            return;
+        }
+        console.shutdown();
+        try {
+            console.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        console = null;
+        lastHeader = null;
+        lastBlock = null;
+    }
+
+    /**
+     * Start buffering the output of the current thread. The block is printed
+     * at once when calling {@link Console#endBlock()} or when the user has to
+     * answer a question.
+     *
+     * @param header Line printed before the block if the previous block
+     *               printed on the console had another header, null for none
+     */
+    static void beginBlock(final String header) {
+        BLOCK.set(new Block(header));
+    }
+
+    /**
+     * Stop buffering the output of the current thread and print the block.
+     */
+    static void endBlock() {
+        Block block = BLOCK.get();
+        BLOCK.remove();
+        if (block == null) {
+            return;
+        }
+        if (console == null) {
+            block.flush();
+        } else {
+            console.execute(block::flush);
+        }
+    }
+
+    /**
+     * Print the given message and append it to the logs, except the
+     * questions.
+     *
+     * @param level   Level of the message
+     * @param indent  Number of indent to use when printing message
+     * @param message Message to print
+     */
+    static void print(final Sink.Level level, final int indent,
+                      final String message) {
+        Message line = new Message(level, indent, message);
+        Block block = BLOCK.get();
+        if (block != null) {
+            block.append(line);
+        } else if (console != null) {
+            console.execute(() -> write(line, true));
+        } else {
+            write(line, true);
+        }
+    }
+
+    /**
+     * Write the messages waiting in the sink to the console.
+     */
+    static synchronized void flush() {
+        if (sink != null) {
+            sink.flush();
+        }
+    }
+
+    /**
+     * Read a line entered by the user. When the console thread is started, the
+     * block buffered by the current thread is printed first and the line is
+     * read from the console thread, only the current thread waits for the
+     * answer.
+     *
+     * @return Line entered by the user
+     */
+    static String readLine() {
+        if (console == null) {
+            flush();
+            return Terminal.getScanner().nextLine();
+        }
+        Block block = BLOCK.get();
+        Future<String> line = console.submit(() -> {
+            if (block != null) {
+                block.flush();
+            }
+            flush();
+            return Terminal.getScanner().nextLine();
+        });
+        try {
+            return line.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return Sink the output is written to, created if necessary
+     */
+    private static synchronized Sink getSink() {
+        if (sink == null) {
+            sink = Sink.create();
+        }
+        return sink;
+    }
+
+    /**
+     * Print the given message and append it to the logs.
+     *
+     * @param message Message to print
+     * @param log     true if the message has to be appended to the logs,
+     *                false otherwise
+     */
+    private static void write(final Message message, final boolean log) {
+        getSink().print(message.level, message.indent, message.text);
+        if (log && message.isLogged() && Config.isLogEnabled()) {
+            Logger.append(message.getLog() + "\n");
+        }
+    }
+
+    /**
+     * Message printed on the console.
+     */
+    private static final class Message {
+
+        /**
+         * Level of the message.
+         */
+        private final Sink.Level level;
+
+        /**
+         * Number of indent to use when printing message.
+         */
+        private final int indent;
+
+        /**
+         * Message to print.
+         */
+        private final String text;
+
+        /**
+         * Message constructor.
+         *
+         * @param level  Level of the message
+         * @param indent Number of indent to use when printing message
+         * @param text   Message to print
+         */
+        private Message(final Sink.Level level, final int indent,
+                        final String text) {
+            this.level = level;
+            this.indent = indent;
+            this.text = text;
+        }
+
+        /**
+         * @return true if the message is appended to the logs, false for the
+         * questions
+         */
+        private boolean isLogged() {
+            return level != Sink.Level.QUESTION;
+        }
+
+        /**
+         * @return Message appended to the logs
+         */
+        private String getLog() {
+            return Sink.indent(text, indent);
+        }
+    }
+
+    /**
+     * Block of output buffered by an album worker.
+     */
+    private static final class Block {
+
+        /**
+         * Line printed before the block, null for none.
+         */
+        private final String header;
+
+        /**
+         * Buffered messages.
+         */
+        private final List<Message> messages = new ArrayList<>();
+
+        /**
+         * Buffered logs.
+         */
+        private final StringBuilder logs = new StringBuilder();
+
+        /**
+         * First message of the block, printed again when the block is
+         * continued after another block has been printed.
+         */
+        private Message title;
+
+        /**
+         * Flag set to true if the block has already been partly printed,
+         * false otherwise.
+         */
+        private boolean printed = false;
+
+        /**
+         * Block constructor.
+         *
+         * @param header Line printed before the block, null for none
+         */
+        private Block(final String header) {
+            this.header = header;
+        }
+
+        /**
+         * Append the given message to the block.
+         *
+         * @param message Message to print
+         */
+        private void append(final Message message) {
+            if (title == null) {
+                title = message;
+            }
+            messages.add(message);
+            if (message.isLogged()) {
+                logs.append(message.getLog()).append("\n");
+            }
+        }
+
+        /**
+         * Print the buffered output and append the buffered logs to the logs.
+         */
+        private void flush() {
+            if (messages.isEmpty()) {
+                return;
+            }
+
+            // print header if the previous block belongs to another header
+            if (header != null && !header.equals(lastHeader)) {
+                write(new Message(Sink.Level.INFO, 0, header), true);
+                lastHeader = header;
+            }
+
+            // print title again if another block has been printed since the
+            // beginning of this block
+            if (printed && lastBlock != this) {
+                write(title, false);
+            }
+            for (Message message : messages) {
+                write(message, false);
+            }
+            if (logs.length() > 0 && Config.isLogEnabled()) {
+                Logger.append(logs.toString());
+            }
+            messages.clear();
+            logs.setLength(0);
+            printed = true;
+            lastBlock = this;
+        }
+    }
+}
@@ -2,25 +2,53 @@ package com.alkisum.java.utils;
 
 import com.alkisum.java.exceptions.EmptyAlbumDirectoryException;
 import com.mpatric.mp3agic.InvalidDataException;
-import com.mpatric.mp3agic.NotSupportedException;
 import com.mpatric.mp3agic.UnsupportedTagException;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Utility class for cover files.
  *
  * @author Alkisum
- * @version 1.0
+ * @version 1.3
  * @since 1.0
  */
 final class Cover {
 
+    /**
+     * Number of bytes read at once when computing the digest of a cover file.
+     */
+    private static final int DIGEST_CHUNK_LENGTH = 8192;
+
+    /**
+     * Maximum number of cover files kept in the check cache, enough for the
+     * album being processed and the albums prefetched.
+     */
+    private static final int MAX_CHECKS = 16;
+
+    /**
+     * Checks of the cover files mapped by their path, reused as long as the
+     * size and the last modified time of the cover file do not change.
+     */
+    private static final Map<String, CoverCheck> CHECKS = new LinkedHashMap<
+            String, CoverCheck>(MAX_CHECKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+                final Map.Entry<String, CoverCheck> eldest) {
+            return size() > MAX_CHECKS;
+        }
+    };
+
     /**
      * Cover constructor.
      */
@@ -33,30 +61,26 @@ final class Cover {
      * an existing file.
      *
      * @param album Album directory containing the songs
-     * @throws IOException          ImageMagick cannot convert the image
-     * @throws InterruptedException Current thread has been interrupted
+     * @return Album snapshot, updated if a cover file has been renamed or
+     * converted
+     * @throws IOException The image cannot be converted
      */
-    static void replaceCoverFile(final File album)
-            throws IOException, InterruptedException {
-        // list song files
-        File[] files;
-        try {
-            files = FileSystem.listSongs(album);
-        } catch (EmptyAlbumDirectoryException e) {
-            return;
-        }
+    static AlbumSnapshot replaceCoverFile(final AlbumSnapshot album)
+            throws IOException {
+        AlbumSnapshot updated = album;
+        File coverFile = Config.getCoverFile(album.getDirectory());
 
         // browse song files
-        for (File file : files) {
+        for (AlbumSnapshot.Entry entry : album.getEntries()) {
+            File file = entry.getFile();
 
             // check if cover already exists
-            File coverFile = Config.getCoverFile(file.getParentFile());
-            if (coverFile.exists()) {
+            if (updated.contains(coverFile.getName())) {
                 break;
             }
 
             // rename old cover to new cover
-            if (file.isFile()
+            if (entry.isFile()
                     && Arrays.asList(Config.getObsoleteCoverFileName())
                     .contains(file.getName())) {
 
@@ -65,22 +89,31 @@ final class Cover {
                         getExtension(file.getName()))) {
 
                     // image type identical: rename it
-                    renameCoverFile(file);
+                    if (renameCoverFile(file)) {
+                        updated = updated.withMoved(file, coverFile);
+                    }
                 } else {
 
                     // image type different: convert it
                     convertImage(file, coverFile);
+                    if (Plan.isEnabled()) {
+                        updated = updated.withPlanned(coverFile);
+                    } else if (coverFile.exists()) {
+                        updated = updated.withWritten(coverFile);
+                    }
                 }
             }
         }
+        return updated;
     }
 
     /**
      * Rename the given cover file with a valid cover filename.
      *
      * @param cover Cover file to rename
+     * @return true if the cover file has been renamed, false otherwise
      */
-    private static void renameCoverFile(final File cover) {
+    private static boolean renameCoverFile(final File cover) {
         String response = "";
         if (!Config.isForceEnabled()) {
             // ask confirmation to rename the cover file
@@ -88,16 +121,23 @@ final class Cover {
                     + Config.getCoverFileName() + "? (Y/n)", 2);
 
             // get response from user
-            response = Terminal.getScanner().nextLine();
+            response = Terminal.readLine();
         }
 
         // check if user wants to rename the cover file
         if (Config.isForceEnabled() || !response.toLowerCase().equals("n")) {
+            if (Plan.isEnabled()) {
+                // plan mode: write the action to the plan
+                Plan.rename(cover.getParentFile(), cover,
+                        Config.getCoverFile(cover.getParentFile()));
+                return true;
+            }
             try {
                 // rename cover file with a valid cover filename
                 Files.move(cover.toPath(), Config.getCoverFile(
                         cover.getParentFile()).toPath());
                 Terminal.printConfirmation(cover.getName() + " renamed", 2);
+                return true;
             } catch (IOException e) {
                 // cannot rename cover file: print error
                 Terminal.printError("Cannot rename to "
@@ -105,138 +145,225 @@ final class Cover {
                 e.printStackTrace();
             }
         }
+        return false;
     }
 
     /**
      * Check if a cover file name exists for the given album.
      *
      * @param album Album to check
+     * @return Album snapshot, listed again if the user retried after creating
+     * the cover file
+     * @throws EmptyAlbumDirectoryException Empty album directory
      */
-    static void checkCoverExists(final File album) {
+    static AlbumSnapshot checkCoverExists(final AlbumSnapshot album)
+            throws EmptyAlbumDirectoryException {
         // check if a cover file name exists
-        if (!Config.getCoverFile(album).exists()) {
+        if (!album.contains(Config.getCoverFileName())) {
 
             // no cover file exists: tell user to create one
-            createCoverFile(album);
+            return createCoverFile(album);
         }
+        return album;
     }
 
     /**
      * Create cover file by opening the file manager only.
      *
      * @param album Album to create the cover for
+     * @return Album snapshot, listed again if the user retried after creating
+     * the cover file
+     * @throws EmptyAlbumDirectoryException Empty album directory
      */
-    private static void createCoverFile(final File album) {
+    private static AlbumSnapshot createCoverFile(final AlbumSnapshot album)
+            throws EmptyAlbumDirectoryException {
         FileSystem.openFileManager("Cover does not exist",
-                album.getAbsolutePath(), 2);
+                album.getDirectory().getAbsolutePath(), 2);
         if (Terminal.askToRetry(2)) {
-            checkCoverExists(album);
+            return checkCoverExists(album.refresh());
         }
+        return album;
     }
 
     /**
      * Check if cover is a baseline or progressive jpeg, convert to baseline
-     * if necessary and load new cover to MP3 tag.
+     * if necessary and load new cover to the MP3 tags having a different
+     * cover.
      *
-     * @param album Album to process the cover for
+     * @param album   Album to process the cover for
+     * @param changes Changes to write to the MP3 files when the album is
+     *                finished
      */
-    static void processCover(final File album) {
+    static void processCover(final AlbumSnapshot album,
+                             final PendingChanges changes) {
         try {
             // get cover file
-            File coverFile = Config.getCoverFile(album);
-
-            // check if cover is a baseline or a progressive jpeg
-            if (Cover.isCoverBaselineJpeg(coverFile)) {
-
-                // read cover bytes from MP3 tag
-                byte[] mp3CoverBytes = Mp3.getCoverFromMp3Tag(album);
-
-                // read cover bytes from file
-                byte[] coverFileBytes = Files.readAllBytes(coverFile.toPath());
+            File coverFile = Config.getCoverFile(album.getDirectory());
 
-                // check if MP3 cover and cover file are different
-                if (!Arrays.equals(mp3CoverBytes, coverFileBytes)) {
-
-                    // load cover file bytes to MP3 file tag
-                    Mp3.loadCoverToMp3(album, coverFileBytes);
-                }
+            // get the file holding the cover, the cover file might only be
+            // planned to be renamed or converted in plan mode
+            File source = Plan.getSource(coverFile);
 
-            } else {
+            // check if cover is a baseline or a progressive jpeg
+            if (source != null && !Cover.isCoverBaselineJpeg(source)) {
                 // convert image to baseline jpeg
                 convertImage(coverFile, coverFile);
+                source = Plan.getSource(coverFile);
+            }
 
-                // read cover bytes from file
-                byte[] coverFileBytes = Files.readAllBytes(coverFile.toPath());
-
-                // load cover file bytes to MP3 file tag
-                Mp3.loadCoverToMp3(album, coverFileBytes);
+            // load cover file to the MP3 files having a different cover, all
+            // the MP3 files if the cover is planned to be converted
+            byte[] coverDigest = null;
+            if (source != null) {
+                coverDigest = digest(source);
             }
-        } catch (IOException | InvalidDataException | UnsupportedTagException
-                | NotSupportedException | InterruptedException e) {
+            Mp3.loadCoverToMp3(album, coverFile, coverDigest, changes);
+        } catch (IOException | InvalidDataException
+                | UnsupportedTagException e) {
             Terminal.printError("Cannot convert cover", 1);
             e.printStackTrace();
         }
     }
 
     /**
-     * Check if the cover is a baseline JPEG using ImageMagick.
+     * Check if the cover is a baseline JPEG by reading its frame header
+     * marker, without decoding the image.
      *
      * @param cover File to check
      * @return true if the cover is a baseline JPEG, false otherwise
-     * @throws IOException Cannot execute ImageMagick command
+     * @throws IOException The cover cannot be read
      */
     private static boolean isCoverBaselineJpeg(final File cover)
             throws IOException {
-        // build command to execute
-        ProcessBuilder pb = new ProcessBuilder();
-
-        // use ImageMagick to detect if the image is a progressive or baseline
-        // jpeg
-        pb.command("identify", "-verbose", cover.getAbsolutePath());
-
-        // start process
-        Process process = pb.start();
-
-        // get result
-        InputStream is = process.getInputStream();
-
-        // read command input stream
-        boolean baselineJpeg = false;
-        try (Scanner s = new Scanner(is).useDelimiter("\\A")) {
-            while (s.hasNextLine()) {
-                String line = s.nextLine();
-                if (line.contains("Interlace:")) {
-                    if (line.contains("None")) {
-                        baselineJpeg = true;
-                        break;
-                    }
-                }
+        CoverCheck check = getCheck(cover);
+        synchronized (CHECKS) {
+            if (check.baseline != null) {
+                return check.baseline;
             }
         }
-        return baselineJpeg;
+
+        // read the cover outside of the lock
+        boolean baseline = Jpeg.isBaseline(cover);
+        synchronized (CHECKS) {
+            check.baseline = baseline;
+        }
+        return baseline;
     }
 
     /**
-     * Convert image using ImageMagick.
+     * Get the SHA-1 digest of the given cover file, compute it only if it is
+     * not in the cache or if the file has changed since it has been computed.
+     *
+     * @param cover Cover file
+     * @return Digest of the cover file
+     * @throws IOException The file cannot be read
+     */
+    private static byte[] digest(final File cover) throws IOException {
+        CoverCheck check = getCheck(cover);
+        synchronized (CHECKS) {
+            if (check.digest != null) {
+                return check.digest;
+            }
+        }
+
+        // read the cover outside of the lock
+        byte[] digest = readDigest(cover);
+        synchronized (CHECKS) {
+            check.digest = digest;
+        }
+        return digest;
+    }
+
+    /**
+     * Get the cached check of the given cover file, replace it by an empty
+     * check if the file has changed since it has been cached.
+     *
+     * @param cover Cover file
+     * @return Cached check
+     * @throws IOException The file attributes cannot be read
+     */
+    private static CoverCheck getCheck(final File cover) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(cover.toPath(),
+                BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String path = cover.getAbsolutePath();
+        synchronized (CHECKS) {
+            CoverCheck check = CHECKS.get(path);
+            if (check == null || check.size != size
+                    || check.lastModified != lastModified) {
+                check = new CoverCheck(size, lastModified);
+                CHECKS.put(path, check);
+            }
+            return check;
+        }
+    }
+
+    /**
+     * Check the cover file of the given album ahead of its process: the
+     * baseline check and the digest compared with the MP3 covers.
+     *
+     * @param album Album to check the cover for
+     * @return true if the MP3 covers will be compared with the cover file,
+     * false otherwise
+     * @throws IOException The cover file cannot be read
+     */
+    static boolean prefetch(final AlbumSnapshot album) throws IOException {
+        String coverFileName = Config.getCoverFileName();
+        if (coverFileName == null || !Config.isProcessCoverEnabled()
+                || !isJpg(coverFileName)
+                || !album.contains(coverFileName)) {
+            return false;
+        }
+
+        // a progressive cover is converted before being digested
+        File coverFile = Config.getCoverFile(album.getDirectory());
+        if (isCoverBaselineJpeg(coverFile)) {
+            digest(coverFile);
+        }
+        return true;
+    }
+
+    /**
+     * Compute the SHA-1 digest of the given file, read by chunks.
+     *
+     * @param file File to digest
+     * @return Digest of the file
+     * @throws IOException The file cannot be read
+     */
+    private static byte[] readDigest(final File file) throws IOException {
+        MessageDigest digest = TagReader.newDigest();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(DIGEST_CHUNK_LENGTH);
+            int read;
+            while ((read = channel.read(buffer)) >= 0) {
+                Metrics.read(read);
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Convert image to a baseline JPEG.
      *
      * @param src    Source image to convert
      * @param target Target image
-     * @throws IOException          ImageMagick cannot convert the image
-     * @throws InterruptedException Current thread has been interrupted
+     * @throws IOException The image cannot be converted
      */
     private static void convertImage(final File src, final File target)
-            throws IOException, InterruptedException {
-        // build command to execute
-        ProcessBuilder pb = new ProcessBuilder();
-
-        // use ImageMagick to convert image
-        pb.command("convert", src.getAbsolutePath(), target.getAbsolutePath());
-
-        // start process
-        Process p = pb.start();
+            throws IOException {
+        // plan mode: write the action to the plan
+        if (Plan.isEnabled()) {
+            Plan.convert(target.getParentFile(), src, target);
+            return;
+        }
 
-        // wait for the process to finish
-        p.waitFor();
+        // convert image within the JVM
+        CoverConverter.convert(src, target);
 
         // confirm conversion
         Terminal.printConfirmation(src.getName() + " converted to "
@@ -269,4 +396,42 @@ final class Cover {
         return extension.toLowerCase().equals("jpg")
                 || extension.toLowerCase().equals("jpeg");
     }
+
+    /**
+     * Baseline check and digest of a cover file with the attributes it has
+     * been read with.
+     */
+    private static final class CoverCheck {
+
+        /**
+         * true if the cover is a baseline JPEG, null if not checked yet.
+         */
+        private Boolean baseline;
+
+        /**
+         * Digest of the cover, null if not computed yet.
+         */
+        private byte[] digest;
+
+        /**
+         * File size in bytes when the cover has been read.
+         */
+        private final long size;
+
+        /**
+         * Last modified time in milliseconds when the cover has been read.
+         */
+        private final long lastModified;
+
+        /**
+         * CoverCheck constructor.
+         *
+         * @param size         File size in bytes
+         * @param lastModified Last modified time in milliseconds
+         */
+        private CoverCheck(final long size, final long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package com.alkisum.java.utils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+/**
+ * Utility class converting images (PNG, GIF, BMP, progressive JPEG...) to
+ * baseline JPEG within the JVM. The conversions run on the calling thread, the
+ * album workers converting their covers in parallel, and each thread reuses
+ * its own JPEG writer.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class CoverConverter {
+
+    /**
+     * JPEG writer of the current thread.
+     */
+    private static final ThreadLocal<ImageWriter> WRITERS =
+            ThreadLocal.withInitial(CoverConverter::createJpegWriter);
+
+    /**
+     * CoverConverter constructor.
+     */
+    private CoverConverter() {
+
+    }
+
+    /**
+     * Convert the given image to a baseline JPEG on the current thread. The
+     * source and the target can be the same file, the target is written to a
+     * temporary file first.
+     *
+     * @param src    Source image to convert
+     * @param target Target JPEG image
+     * @throws IOException The image cannot be read or written
+     */
+    static void convert(final File src, final File target)
+            throws IOException {
+        long srcLength = src.length();
+        convertNow(src, target);
+        Metrics.read(srcLength);
+        Metrics.written(target.length());
+    }
+
+    /**
+     * Decode the given image and encode it as a baseline JPEG.
+     *
+     * @param src    Source image to convert
+     * @param target Target JPEG image
+     * @throws IOException The image cannot be read or written
+     */
+    private static void convertNow(final File src, final File target)
+            throws IOException {
+        // decode image
+        BufferedImage image = ImageIO.read(src);
+        if (image == null) {
+            throw new IOException(src.getName() + " is not a supported image");
+        }
+
+        // JPEG has no alpha channel: draw image on a white background
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            BufferedImage rgb = new BufferedImage(image.getWidth(),
+                    image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = rgb.createGraphics();
+            try {
+                graphics.drawImage(image, 0, 0, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+            image = rgb;
+        }
+
+        // encode baseline JPEG with the configured quality
+        ImageWriter writer = WRITERS.get();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(Config.getCoverQuality() / 100f);
+
+        File tmpFile = new File(target.getPath() + "_tmp");
+        try {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(
+                    tmpFile)) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.reset();
+            }
+            Files.move(tmpFile.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    /**
+     * @return New JPEG writer
+     */
+    private static ImageWriter createJpegWriter() {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(
+                "jpeg");
+        if (!writers.hasNext()) {
+            throw new IllegalStateException("No JPEG writer available");
+        }
+        return writers.next();
+    }
+}
@@ -12,7 +12,7 @@ import java.nio.file.Files;
  * Utility class for file system operations.
  *
  * @author Alkisum
- * @version 1.0
+ * @version 1.3
  * @since 1.0
  */
 public final class FileSystem {
@@ -27,82 +27,89 @@ public final class FileSystem {
     /**
      * Rename album directory by reading year from MP3 tag.
      *
-     * @param songs Songs to get the album year from
      * @param album Album directory to rename
+     * @return Album snapshot, updated if the album directory has been renamed
      * @throws InvalidDataException    Invalid data
      * @throws IOException             The file cannot be read
      * @throws UnsupportedTagException Unsupported tag
      */
-    static void renameAlbumDirectory(final File[] songs,
-                                     final File album)
+    static AlbumSnapshot renameAlbumDirectory(final AlbumSnapshot album)
             throws InvalidDataException, IOException, UnsupportedTagException {
+        File directory = album.getDirectory();
 
         // check if album has already a valid directory name
-        if (album.getName().matches(Config.getAlbumPattern())) {
-            return;
+        if (Rules.isValidAlbumName(directory.getName())) {
+            return album;
         }
 
         // get album directory name from mask
-        String albumNameWithMask = Mp3.getAlbumDirectoryNameFromMask(songs);
+        String albumNameWithMask = Mp3.getAlbumDirectoryNameFromMask(album);
         if (albumNameWithMask == null) {
             Terminal.printWarning("Cannot build album directory name from mask",
                     1);
             if (Terminal.askToRetry(1)) {
-                renameAlbumDirectory(songs, album);
+                try {
+                    return renameAlbumDirectory(album.refresh());
+                } catch (EmptyAlbumDirectoryException e) {
+                    return album;
+                }
             }
-            return;
+            return album;
         }
 
         String response = "";
         if (!Config.isForceEnabled()) {
             // ask confirmation to rename the album directory
-            Terminal.printQuestion("Rename " + album.getName()
+            Terminal.printQuestion("Rename " + directory.getName()
                     + " to " + albumNameWithMask + "? (Y/n)", 2);
 
             // get response from user
-            response = Terminal.getScanner().nextLine();
+            response = Terminal.readLine();
         }
 
         // check if user wants to rename the album directory
         if (Config.isForceEnabled() || !response.toLowerCase().equals("n")) {
+            File renamed = new File(directory.getParent(), albumNameWithMask);
+            if (Plan.isEnabled()) {
+                // plan mode: write the action to the plan
+                Plan.rename(directory, directory, renamed);
+                return album.withDirectory(renamed);
+            }
             try {
                 // rename album directory with a valid name
-                Files.move(album.toPath(), new File(album.getParent(),
-                        albumNameWithMask).toPath());
-                Terminal.printConfirmation(album.getName() + " renamed", 2);
+                Files.move(directory.toPath(), renamed.toPath());
+                Terminal.printConfirmation(directory.getName() + " renamed",
+                        2);
+                return album.withDirectory(renamed);
             } catch (IOException e) {
                 // cannot rename album directory: print error
                 Terminal.printError("Cannot rename to " + albumNameWithMask, 2);
                 e.printStackTrace();
             }
         }
+        return album;
     }
 
     /**
      * Check if the song files contained in the album directory are files or
-     * directories.
+     * directories and print the extra rules broken by the album.
      *
-     * @param album Album directory containing the songs
+     * @param album  Album directory containing the songs
+     * @param report Rules report of the album
      */
-    static void checkFiles(final File album) {
-        // list song files
-        File[] files;
-        try {
-            files = FileSystem.listSongs(album);
-        } catch (EmptyAlbumDirectoryException e) {
-            return;
+    static void checkFiles(final AlbumSnapshot album,
+                           final Rules.Report report) {
+        // browse song files that are directories
+        for (AlbumSnapshot.Entry song : report.getDirectories()) {
+            FileSystem.openFileManager(
+                    song.getName() + " is not a file",
+                    album.getDirectory().getAbsolutePath(), 2);
+            Terminal.askToContinue(2);
         }
 
-        // browse song files
-        for (File song : files) {
-
-            // check if song file is a file
-            if (song.isDirectory()) {
-                FileSystem.openFileManager(
-                        song.getName() + " is not a file",
-                        song.getParentFile().getAbsolutePath(), 2);
-                Terminal.askToContinue(2);
-            }
+        // print extra rules violations
+        for (String violation : report.getViolations()) {
+            Terminal.printWarning(violation, 2);
         }
     }
 
@@ -110,22 +117,17 @@ public final class FileSystem {
      * Delete invalid files in the given album.
      *
      * @param album Album to delete the invalid files from
+     * @return Album snapshot, updated with the deleted files
      */
-    static void deleteInvalidFiles(final File album) {
-        // list song files
-        File[] files;
-        try {
-            files = FileSystem.listSongs(album);
-        } catch (EmptyAlbumDirectoryException e) {
-            return;
-        }
+    static AlbumSnapshot deleteInvalidFiles(final AlbumSnapshot album) {
+        AlbumSnapshot updated = album;
 
         // browse song files
-        for (File file : files) {
+        for (AlbumSnapshot.Entry entry : album.getEntries()) {
+            File file = entry.getFile();
 
-            // check if current file is a MP3 or is a cover
-            if (!file.getName().endsWith(".mp3")
-                    && !file.getName().equals(Config.getCoverFileName())) {
+            // check if current file has an allowed extension or is a cover
+            if (!Rules.isAllowedFile(file.getName())) {
 
                 String response = "";
                 if (!Config.isForceEnabled()) {
@@ -134,16 +136,23 @@ public final class FileSystem {
                             "Delete " + file.getName() + "? (Y/n)", 2);
 
                     // get response from user
-                    response = Terminal.getScanner().nextLine();
+                    response = Terminal.readLine();
                 }
 
 
                 // check if user wants to delete the file
                 if (Config.isForceEnabled()
                         || !response.toLowerCase().equals("n")) {
+                    if (Plan.isEnabled()) {
+                        // plan mode: write the action to the plan
+                        Plan.delete(album.getDirectory(), file);
+                        updated = updated.withDeleted(file);
+                        continue;
+                    }
                     try {
                         // delete file
                         Files.delete(file.toPath());
+                        updated = updated.withDeleted(file);
                         Terminal.printConfirmation(
                                 file.getName() + " deleted", 2);
                     } catch (IOException e) {
@@ -155,29 +164,7 @@ public final class FileSystem {
                 }
             }
         }
-    }
-
-    /**
-     * List songs contained in the given album directory.
-     *
-     * @param album Album directory to get the files from
-     * @return List of files contained in the album directory
-     * @throws EmptyAlbumDirectoryException Empty album directory
-     */
-    static File[] listSongs(final File album)
-            throws EmptyAlbumDirectoryException {
-        // list song files
-        File[] songs = album.listFiles();
-
-        // check if album directory contains song files
-        if (songs == null || songs.length == 0) {
-            FileSystem.openFileManager("No songs in directory",
-                    album.getAbsolutePath(), 2);
-            Terminal.askToContinue(2);
-            throw new EmptyAlbumDirectoryException();
-        }
-
-        return songs;
+        return updated;
     }
 
     /**
@@ -190,8 +177,9 @@ public final class FileSystem {
     public static void openFileManager(final String message,
                                        final String path,
                                        final int indent) {
-        // check if file manager is specified in configuration
-        if (Config.getFileManager() == null) {
+        // check if file manager is specified in configuration, the file
+        // manager is never opened in plan mode
+        if (Config.getFileManager() == null || Plan.isEnabled()) {
             // print simple warning without opening file manager
             Terminal.printWarning(message + ".", indent);
             return;
@@ -201,7 +189,7 @@ public final class FileSystem {
         Terminal.printWarning(message + ". Open? (Y/n)", indent);
 
         // get response from user
-        String response = Terminal.getScanner().nextLine();
+        String response = Terminal.readLine();
 
         // check if user wants to open file manager
         if (!response.toLowerCase().equals("n")) {
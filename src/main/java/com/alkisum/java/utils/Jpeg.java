@@ -0,0 +1,164 @@
+package com.alkisum.java.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Utility class reading the markers of JPEG files. Only the segments located
+ * before the frame header are read, no pixel is decoded.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class Jpeg {
+
+    /**
+     * Marker prefix.
+     */
+    private static final int MARKER_PREFIX = 0xff;
+
+    /**
+     * Start of image marker.
+     */
+    private static final int SOI = 0xd8;
+
+    /**
+     * Baseline DCT frame header marker.
+     */
+    private static final int SOF0 = 0xc0;
+
+    /**
+     * Extended sequential DCT frame header marker.
+     */
+    private static final int SOF1 = 0xc1;
+
+    /**
+     * Define Huffman table marker, in the SOF marker range but not a frame
+     * header.
+     */
+    private static final int DHT = 0xc4;
+
+    /**
+     * Define arithmetic coding conditioning marker, in the SOF marker range
+     * but not a frame header.
+     */
+    private static final int DAC = 0xcc;
+
+    /**
+     * Last frame header marker.
+     */
+    private static final int SOF15 = 0xcf;
+
+    /**
+     * Start of scan marker, the frame header must have been read before.
+     */
+    private static final int SOS = 0xda;
+
+    /**
+     * End of image marker.
+     */
+    private static final int EOI = 0xd9;
+
+    /**
+     * Buffer size, large enough to hold the segments usually located before
+     * the frame header.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Jpeg constructor.
+     */
+    private Jpeg() {
+
+    }
+
+    /**
+     * Check if the given file is a baseline JPEG by reading its frame header
+     * marker: SOF0 and SOF1 are sequential (baseline), the other frame
+     * headers are progressive, lossless or hierarchical.
+     *
+     * @param file File to check
+     * @return true if the file is a baseline JPEG, false if it is not a JPEG
+     * or if it is not baseline
+     * @throws IOException The file cannot be read
+     */
+    static boolean isBaseline(final File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), BUFFER_SIZE))) {
+            // check start of image
+            if (in.readUnsignedByte() != MARKER_PREFIX
+                    || in.readUnsignedByte() != SOI) {
+                return false;
+            }
+
+            while (true) {
+                // read marker, skipping fill bytes
+                if (in.readUnsignedByte() != MARKER_PREFIX) {
+                    return false;
+                }
+                int marker = in.readUnsignedByte();
+                while (marker == MARKER_PREFIX) {
+                    marker = in.readUnsignedByte();
+                }
+
+                // check frame header
+                if (marker >= SOF0 && marker <= SOF15
+                        && marker != DHT && marker != DAC) {
+                    return marker == SOF0 || marker == SOF1;
+                }
+
+                // no frame header before the image data
+                if (marker == SOS || marker == EOI) {
+                    return false;
+                }
+
+                // skip segment, the standalone markers have no length
+                if (!isStandalone(marker)) {
+                    skipFully(in, in.readUnsignedShort() - 2);
+                }
+            }
+        } catch (EOFException e) {
+            // truncated file
+            return false;
+        }
+    }
+
+    /**
+     * Check if the given marker is a standalone marker, not followed by a
+     * segment length.
+     *
+     * @param marker Marker to check
+     * @return true if the marker is standalone, false otherwise
+     */
+    private static boolean isStandalone(final int marker) {
+        // TEM and RST0 to RST7
+        return marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7);
+    }
+
+    /**
+     * Skip the given number of bytes.
+     *
+     * @param in     Stream to skip the bytes from
+     * @param length Number of bytes to skip
+     * @throws IOException The file cannot be read or is truncated
+     */
+    private static void skipFully(final DataInputStream in, final int length)
+            throws IOException {
+        if (length < 0) {
+            throw new EOFException();
+        }
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+}
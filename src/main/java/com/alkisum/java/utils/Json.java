@@ -0,0 +1,299 @@
+package com.alkisum.java.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON writer and reader for the files written by the program. Values
+ * are read as {@link Map}, {@link List}, {@link String}, {@link Double},
+ * {@link Boolean} or null.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class Json {
+
+    /**
+     * Text to parse.
+     */
+    private final String text;
+
+    /**
+     * Current position in the text.
+     */
+    private int position;
+
+    /**
+     * Json constructor.
+     *
+     * @param text Text to parse
+     */
+    private Json(final String text) {
+        this.text = text;
+    }
+
+    /**
+     * Quote and escape the given string.
+     *
+     * @param value String to quote
+     * @return JSON string
+     */
+    static String quote(final String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Parse the given JSON text.
+     *
+     * @param text JSON text
+     * @return Parsed value
+     * @throws IOException The text is not valid JSON
+     */
+    static Object parse(final String text) throws IOException {
+        Json json = new Json(text);
+        Object value = json.readValue();
+        json.skipWhitespace();
+        if (json.position < text.length()) {
+            throw json.error("Unexpected content");
+        }
+        return value;
+    }
+
+    /**
+     * Read the value at the current position.
+     *
+     * @return Value
+     * @throws IOException The text is not valid JSON
+     */
+    private Object readValue() throws IOException {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("Unexpected end");
+        }
+        char c = text.charAt(position);
+        if (c == '{') {
+            return readObject();
+        } else if (c == '[') {
+            return readArray();
+        } else if (c == '"') {
+            return readString();
+        } else if (text.startsWith("true", position)) {
+            position += 4;
+            return Boolean.TRUE;
+        } else if (text.startsWith("false", position)) {
+            position += 5;
+            return Boolean.FALSE;
+        } else if (text.startsWith("null", position)) {
+            position += 4;
+            return null;
+        }
+        return readNumber();
+    }
+
+    /**
+     * Read the object at the current position.
+     *
+     * @return Object members in their order
+     * @throws IOException The text is not valid JSON
+     */
+    private Map<String, Object> readObject() throws IOException {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected member name");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            object.put(name, readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    /**
+     * Read the array at the current position.
+     *
+     * @return Array values
+     * @throws IOException The text is not valid JSON
+     */
+    private List<Object> readArray() throws IOException {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    /**
+     * Read the string at the current position.
+     *
+     * @return Unescaped string
+     * @throws IOException The text is not valid JSON
+     */
+    private String readString() throws IOException {
+        StringBuilder value = new StringBuilder();
+        position++;
+        while (position < text.length()) {
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (position >= text.length()) {
+                break;
+            }
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error("Invalid escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(
+                                text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     * Read the number at the current position.
+     *
+     * @return Number
+     * @throws IOException The text is not valid JSON
+     */
+    private Double readNumber() throws IOException {
+        int start = position;
+        while (position < text.length()
+                && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return Double.valueOf(text.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error("Unexpected value");
+        }
+    }
+
+    /**
+     * Skip the whitespaces at the current position.
+     */
+    private void skipWhitespace() {
+        while (position < text.length()
+                && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * @return Character at the current position, 0 at the end of the text
+     */
+    private char peek() {
+        if (position < text.length()) {
+            return text.charAt(position);
+        }
+        return 0;
+    }
+
+    /**
+     * Check the character at the current position and skip it.
+     *
+     * @param c Expected character
+     * @throws IOException The character is not the expected one
+     */
+    private void expect(final char c) throws IOException {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    /**
+     * @param message Error message
+     * @return Exception describing the error at the current position
+     */
+    private IOException error(final String message) {
+        return new IOException(message + " at position " + position);
+    }
+}
@@ -2,13 +2,24 @@ package com.alkisum.java.utils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
- * Utility class to log messages in file.
+ * Utility class to log messages in file. The messages are queued and written
+ * to the log file by a background thread while the process is running, so the
+ * memory used by the logs is bounded. When the log file reaches the maximum
+ * size, it is rotated, unless the maximum size is 0. The messages still queued
+ * when the program is stopped are written before it exits.
  *
  * @author Alkisum
- * @version 1.0
+ * @version 1.3
  * @since 1.0
  */
 public final class Logger {
@@ -18,21 +29,97 @@ public final class Logger {
      */
     private static final String LOG_FILE_NAME = "discocleaner.log";
 
+    /**
+     * Maximum number of messages waiting to be written. The threads appending
+     * messages are blocked while the queue is full.
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Size of the buffer used to write to the log file.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Message queued to stop the writer thread, compared by identity.
+     */
+    private static final String END = new String();
+
     /**
      * Logger instance.
      */
     private static Logger logger;
 
     /**
-     * StringBuilder storing logs.
+     * Messages waiting to be written.
+     */
+    private final BlockingQueue<String> queue =
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * Buffer of the bytes waiting to be written to the log file.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Log file, one per shard.
+     */
+    private final File logFile = new File(
+            Shard.getFileName(LOG_FILE_NAME));
+
+    /**
+     * Maximum size of the log file in bytes, 0 or less if the log file is
+     * never rotated.
+     */
+    private final long maxSize;
+
+    /**
+     * Thread writing the messages to the log file.
+     */
+    private final Thread writer;
+
+    /**
+     * Channel of the log file, null if the log file cannot be written.
      */
-    private final StringBuilder logs;
+    private FileChannel channel;
+
+    /**
+     * Number of bytes written to the current log file.
+     */
+    private long size;
+
+    /**
+     * Error raised while writing the log file, null if none.
+     */
+    private IOException error;
 
     /**
      * Logger constructor.
      */
     private Logger() {
-        logs = new StringBuilder();
+        maxSize = Config.getLogMaxSize() * 1024L * 1024L;
+        try {
+            channel = open();
+        } catch (IOException e) {
+            error = e;
+        }
+        writer = new Thread(this::run, "logger");
+        writer.setDaemon(true);
+        writer.start();
+
+        // write the queued messages when the program is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop,
+                "logger-flush"));
+    }
+
+    /**
+     * @return Logger instance, started on first call
+     */
+    private static synchronized Logger getLogger() {
+        if (logger == null) {
+            logger = new Logger();
+        }
+        return logger;
     }
 
     /**
@@ -41,28 +128,30 @@ public final class Logger {
      * @param log Message to append to logs
      */
     static void append(final String log) {
-        if (logger == null) {
-            logger = new Logger();
+        try {
+            getLogger().queue.put(log);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        logger.logs.append(log);
     }
 
     /**
-     * Write logs to file.
+     * Write the remaining logs to file and stop the writer thread.
      *
      * @return Written file
      * @throws IOException The file cannot be created or modify
      */
     public static File write() throws IOException {
-        if (logger == null) {
-            logger = new Logger();
+        Logger instance;
+        synchronized (Logger.class) {
+            instance = getLogger();
+            logger = null;
         }
-        File logFile = new File(LOG_FILE_NAME);
-        logFile.createNewFile();
-        try (PrintWriter out = new PrintWriter(logFile)) {
-            out.println(logger.logs.toString());
+        instance.stop();
+        if (instance.error != null) {
+            throw instance.error;
         }
-        return logFile;
+        return instance.logFile;
     }
 
     /**
@@ -82,4 +171,144 @@ public final class Logger {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Write the queued messages, flush and close the log file, then wait for
+     * the writer thread to stop. Nothing is done if it is already stopped.
+     */
+    private void stop() {
+        if (!writer.isAlive()) {
+            return;
+        }
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write the queued messages until the end message is received. The buffer
+     * is flushed each time the queue is empty, so the log file is up to date
+     * when the process is waiting for the user.
+     */
+    private void run() {
+        try {
+            while (true) {
+                String log = queue.take();
+                if (log == END) {
+                    break;
+                }
+                write(log.getBytes(StandardCharsets.UTF_8));
+                if (queue.isEmpty()) {
+                    flush();
+                }
+            }
+            flush();
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Add the given bytes to the buffer, flushing it when full.
+     *
+     * @param bytes Bytes to write
+     */
+    private void write(final byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Write the buffer to the log file and rotate the log file if it reached
+     * the maximum size, if any. The messages are dropped once an error
+     * occurred.
+     */
+    private void flush() {
+        buffer.flip();
+        if (channel != null && error == null) {
+            try {
+                while (buffer.hasRemaining()) {
+                    size += channel.write(buffer);
+                }
+                if (maxSize > 0 && size >= maxSize) {
+                    rotate();
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Rename the log file to the first rotated log file, shifting the older
+     * rotated log files, and start a new log file.
+     *
+     * @throws IOException The log files cannot be renamed or written
+     */
+    private void rotate() throws IOException {
+        channel.close();
+        int files = Config.getLogMaxFiles();
+        if (files > 0) {
+            Files.deleteIfExists(rotated(files).toPath());
+            for (int i = files - 1; i > 0; i--) {
+                File file = rotated(i);
+                if (file.exists()) {
+                    Files.move(file.toPath(), rotated(i + 1).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(logFile.toPath(), rotated(1).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = open();
+    }
+
+    /**
+     * @param index Index of the rotated log file
+     * @return Rotated log file
+     */
+    private File rotated(final int index) {
+        return new File(logFile.getPath() + "." + index);
+    }
+
+    /**
+     * Open the log file, truncating its previous content.
+     *
+     * @return Channel of the log file
+     * @throws IOException The log file cannot be written
+     */
+    private FileChannel open() throws IOException {
+        size = 0;
+        return FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Close the log file.
+     */
+    private void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
 }
@@ -0,0 +1,493 @@
+package com.alkisum.java.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing and counters of the stages of the album process. Each stage records
+ * its wall time with a latency histogram, the number of files it handled, the
+ * bytes read and written and the errors printed while it was running. The
+ * counters can be updated by several album workers at the same time, and the
+ * work handed to the background threads is charged to the stage it is done
+ * for. A summary table is printed at the end of the run and the metrics can
+ * be written to a JSON file. The JSON files written by the shards of a run
+ * can be merged into the metrics of the whole run.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+public final class Metrics {
+
+    /**
+     * Number of latency histogram buckets. Bucket i counts the executions
+     * that took less than 2^i microseconds and at least 2^(i-1).
+     */
+    private static final int BUCKETS = 40;
+
+    /**
+     * Stage running on the current thread, null if none.
+     */
+    private static final ThreadLocal<Stage> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Start time of the run in nanoseconds.
+     */
+    private static long runStart = System.nanoTime();
+
+    /**
+     * Metrics constructor.
+     */
+    private Metrics() {
+
+    }
+
+    /**
+     * Stages of the album process.
+     */
+    enum Stage {
+
+        /**
+         * Listing of the album directory.
+         */
+        LIST("list"),
+
+        /**
+         * Check of the files and MP3 filenames.
+         */
+        FILES("files"),
+
+        /**
+         * Check of the MP3 tags.
+         */
+        TAGS("tags"),
+
+        /**
+         * Cover file replacement, conversion and comparison.
+         */
+        COVER("cover"),
+
+        /**
+         * Write of the MP3 tag changes.
+         */
+        WRITE("write"),
+
+        /**
+         * Deletion of the invalid files.
+         */
+        DELETE("delete"),
+
+        /**
+         * Renaming of the album directory.
+         */
+        RENAME("rename");
+
+        /**
+         * Stage name printed in the summary.
+         */
+        private final String label;
+
+        /**
+         * Number of executions.
+         */
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Total wall time in nanoseconds.
+         */
+        private final LongAdder nanos = new LongAdder();
+
+        /**
+         * Longest execution in nanoseconds.
+         */
+        private final LongAccumulator maxNanos =
+                new LongAccumulator(Math::max, 0);
+
+        /**
+         * Number of files handled.
+         */
+        private final LongAdder files = new LongAdder();
+
+        /**
+         * Number of bytes read.
+         */
+        private final LongAdder bytesRead = new LongAdder();
+
+        /**
+         * Number of bytes written.
+         */
+        private final LongAdder bytesWritten = new LongAdder();
+
+        /**
+         * Number of errors printed.
+         */
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * Latency histogram, see {@link #BUCKETS}.
+         */
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        /**
+         * Stage constructor.
+         *
+         * @param label Stage name printed in the summary
+         */
+        Stage(final String label) {
+            this.label = label;
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Get the upper bound of the bucket containing the given percentile.
+         *
+         * @param percentile Percentile, between 0 and 100
+         * @return Upper bound of the latency in microseconds, 0 if the stage
+         * has not been executed
+         */
+        private long percentile(final double percentile) {
+            long total = count.sum();
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i].sum();
+                if (seen >= rank && seen > 0) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Reset the start time of the run.
+     */
+    public static void begin() {
+        runStart = System.nanoTime();
+    }
+
+    /**
+     * Start the given stage on the current thread.
+     *
+     * @param stage Stage to start
+     * @return Start time to give to {@link #stop(long, int)}
+     */
+    static long start(final Stage stage) {
+        CURRENT.set(stage);
+        return System.nanoTime();
+    }
+
+    /**
+     * Stop the stage running on the current thread and record its wall time.
+     *
+     * @param start Start time returned by {@link #start(Stage)}
+     * @param files Number of files handled by the stage
+     */
+    static void stop(final long start, final int files) {
+        Stage stage = CURRENT.get();
+        if (stage == null) {
+            return;
+        }
+        CURRENT.remove();
+        long elapsed = System.nanoTime() - start;
+        stage.count.increment();
+        stage.nanos.add(elapsed);
+        stage.maxNanos.accumulate(elapsed);
+        stage.files.add(files);
+        long micros = TimeUnit.NANOSECONDS.toMicros(elapsed);
+        int bucket = Math.min(BUCKETS - 1,
+                Long.SIZE - Long.numberOfLeadingZeros(micros));
+        stage.histogram[bucket].increment();
+    }
+
+    /**
+     * Charge the bytes read and written and the errors of the current thread
+     * to the given stage, without recording an execution. Used by the threads
+     * doing background work for a stage.
+     *
+     * @param stage Stage to charge, null for none
+     * @return Stage charged before, to give back to this method when the work
+     * is done
+     */
+    static Stage attach(final Stage stage) {
+        Stage previous = CURRENT.get();
+        if (stage == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(stage);
+        }
+        return previous;
+    }
+
+    /**
+     * Bind the given task to the stage running on the current thread, so the
+     * task is charged to it on the thread running it.
+     *
+     * @param task Task handed to an executor
+     * @param <T>  Type of the task result
+     * @return Task charged to the current stage
+     */
+    static <T> Callable<T> bind(final Callable<T> task) {
+        Stage stage = CURRENT.get();
+        return () -> {
+            Stage previous = attach(stage);
+            try {
+                return task.call();
+            } finally {
+                attach(previous);
+            }
+        };
+    }
+
+    /**
+     * Record bytes read by the stage running on the current thread.
+     *
+     * @param bytes Number of bytes read
+     */
+    static void read(final long bytes) {
+        Stage stage = CURRENT.get();
+        if (stage != null) {
+            stage.bytesRead.add(bytes);
+        }
+    }
+
+    /**
+     * Record bytes written by the stage running on the current thread.
+     *
+     * @param bytes Number of bytes written
+     */
+    static void written(final long bytes) {
+        Stage stage = CURRENT.get();
+        if (stage != null) {
+            stage.bytesWritten.add(bytes);
+        }
+    }
+
+    /**
+     * Record an error printed by the stage running on the current thread.
+     */
+    static void error() {
+        Stage stage = CURRENT.get();
+        if (stage != null) {
+            stage.errors.increment();
+        }
+    }
+
+    /**
+     * Print the summary table and write the metrics file if enabled in the
+     * configuration.
+     */
+    public static void report() {
+        if (!Config.isMetricsEnabled()) {
+            return;
+        }
+        report(System.nanoTime() - runStart);
+    }
+
+    /**
+     * Merge the given metrics files, written by the shards of a run, then
+     * print the summary table of the whole run and write it to the metrics
+     * file if specified in the configuration. The counters, the wall times
+     * and the histograms are added, the shards running at the same time the
+     * elapsed time of the run is the longest one.
+     *
+     * @param files Metrics files to merge
+     */
+    public static void merge(final List<String> files) {
+        long elapsed = 0;
+        for (String file : files) {
+            try {
+                elapsed = Math.max(elapsed, readJson(new File(file)));
+            } catch (IOException e) {
+                Terminal.printError("Cannot read " + file, 0);
+                e.printStackTrace();
+                return;
+            }
+        }
+        report(elapsed);
+    }
+
+    /**
+     * Print the summary table and write the metrics file if specified in the
+     * configuration.
+     *
+     * @param elapsed Wall time of the run in nanoseconds
+     */
+    private static void report(final long elapsed) {
+        // print summary table
+        String format = "%-8s%8s%8s%8s%12s%10s%10s%10s%12s%14s";
+        Terminal.printInfo(String.format(format, "Stage", "Count", "Files",
+                "Errors", "Total(ms)", "p50(us)", "p99(us)", "Max(us)",
+                "Read(KiB)", "Written(KiB)"), 0);
+        for (Stage stage : Stage.values()) {
+            Terminal.printInfo(String.format(format, stage.label,
+                    stage.count.sum(), stage.files.sum(), stage.errors.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(stage.nanos.sum()),
+                    stage.percentile(50), stage.percentile(99),
+                    TimeUnit.NANOSECONDS.toMicros(stage.maxNanos.get()),
+                    stage.bytesRead.sum() / 1024,
+                    stage.bytesWritten.sum() / 1024), 0);
+        }
+        Terminal.printInfo("Elapsed: "
+                + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms", 0);
+
+        // write metrics file, one per shard
+        if (Config.getMetricsFile() != null) {
+            File metricsFile = new File(
+                    Shard.getFileName(Config.getMetricsFile()));
+            try {
+                writeJson(metricsFile, elapsed);
+                Terminal.printConfirmation("Metrics written to "
+                        + metricsFile.getPath(), 0);
+            } catch (IOException e) {
+                Terminal.printError("Cannot write " + metricsFile.getPath(),
+                        0);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Write the metrics to the given JSON file.
+     *
+     * @param file    File to write
+     * @param elapsed Wall time of the run in nanoseconds
+     * @throws IOException The file cannot be written
+     */
+    private static void writeJson(final File file, final long elapsed)
+            throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(),
+                StandardCharsets.UTF_8)) {
+            writer.write("{\"elapsedMillis\":"
+                    + TimeUnit.NANOSECONDS.toMillis(elapsed) + ",");
+            writer.newLine();
+            if (Shard.isEnabled()) {
+                writer.write("\"shard\":" + Json.quote(Config.getShardIndex()
+                        + "/" + Config.getShardCount()) + ",");
+                writer.newLine();
+            }
+            writer.write("\"stages\":[");
+            for (Stage stage : Stage.values()) {
+                writer.newLine();
+                StringBuilder json = new StringBuilder();
+                json.append("{\"name\":").append(Json.quote(stage.label));
+                json.append(",\"count\":").append(stage.count.sum());
+                json.append(",\"files\":").append(stage.files.sum());
+                json.append(",\"errors\":").append(stage.errors.sum());
+                json.append(",\"totalMillis\":").append(
+                        TimeUnit.NANOSECONDS.toMillis(stage.nanos.sum()));
+                json.append(",\"totalMicros\":").append(
+                        TimeUnit.NANOSECONDS.toMicros(stage.nanos.sum()));
+                json.append(",\"maxMicros\":").append(
+                        TimeUnit.NANOSECONDS.toMicros(stage.maxNanos.get()));
+                json.append(",\"p50Micros\":").append(stage.percentile(50));
+                json.append(",\"p90Micros\":").append(stage.percentile(90));
+                json.append(",\"p99Micros\":").append(stage.percentile(99));
+                json.append(",\"bytesRead\":").append(stage.bytesRead.sum());
+                json.append(",\"bytesWritten\":")
+                        .append(stage.bytesWritten.sum());
+                json.append(",\"histogramMicros\":[");
+                for (int i = 0; i < BUCKETS; i++) {
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    json.append(stage.histogram[i].sum());
+                }
+                json.append("]}");
+                if (stage.ordinal() < Stage.values().length - 1) {
+                    json.append(',');
+                }
+                writer.write(json.toString());
+            }
+            writer.newLine();
+            writer.write("]}");
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Add the metrics of the given JSON file, written by
+     * {@link #writeJson(File, long)}, to the stages.
+     *
+     * @param file File to read
+     * @return Wall time of the run in nanoseconds
+     * @throws IOException The file cannot be read or is not a metrics file
+     */
+    @SuppressWarnings("unchecked")
+    private static long readJson(final File file) throws IOException {
+        Object metrics = Json.parse(new String(
+                Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        if (!(metrics instanceof Map)
+                || !(((Map<String, Object>) metrics).get("stages")
+                instanceof List)) {
+            throw new IOException("Not a metrics file");
+        }
+        Map<String, Object> run = (Map<String, Object>) metrics;
+        for (Object value : (List<Object>) run.get("stages")) {
+            if (!(value instanceof Map)) {
+                throw new IOException("Not a metrics file");
+            }
+            Map<String, Object> json = (Map<String, Object>) value;
+            for (Stage stage : Stage.values()) {
+                if (!stage.label.equals(json.get("name"))) {
+                    continue;
+                }
+                stage.count.add(getLong(json, "count"));
+                stage.files.add(getLong(json, "files"));
+                stage.errors.add(getLong(json, "errors"));
+                if (json.containsKey("totalMicros")) {
+                    stage.nanos.add(TimeUnit.MICROSECONDS.toNanos(
+                            getLong(json, "totalMicros")));
+                } else {
+                    stage.nanos.add(TimeUnit.MILLISECONDS.toNanos(
+                            getLong(json, "totalMillis")));
+                }
+                stage.maxNanos.accumulate(TimeUnit.MICROSECONDS.toNanos(
+                        getLong(json, "maxMicros")));
+                stage.bytesRead.add(getLong(json, "bytesRead"));
+                stage.bytesWritten.add(getLong(json, "bytesWritten"));
+                Object histogram = json.get("histogramMicros");
+                if (histogram == null) {
+                    continue;
+                }
+                if (!(histogram instanceof List)) {
+                    throw new IOException("Not a metrics file");
+                }
+                List<Object> buckets = (List<Object>) histogram;
+                for (int i = 0; i < Math.min(BUCKETS, buckets.size()); i++) {
+                    if (!(buckets.get(i) instanceof Number)) {
+                        throw new IOException("Not a metrics file");
+                    }
+                    stage.histogram[i].add(
+                            ((Number) buckets.get(i)).longValue());
+                }
+            }
+        }
+        return TimeUnit.MILLISECONDS.toNanos(getLong(run, "elapsedMillis"));
+    }
+
+    /**
+     * @param json JSON object
+     * @param name Name of the number
+     * @return Number, 0 if the object does not contain it
+     */
+    private static long getLong(final Map<String, Object> json,
+                                final String name) {
+        Object value = json.get(name);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return 0;
+    }
+}
@@ -1,7 +1,9 @@
 package com.alkisum.java.utils;
 
 import com.alkisum.java.exceptions.EmptyAlbumDirectoryException;
-import com.mpatric.mp3agic.ID3v2FrameSet;
+import com.mpatric.mp3agic.AbstractID3v2Tag;
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.ID3v24Tag;
 import com.mpatric.mp3agic.InvalidDataException;
 import com.mpatric.mp3agic.Mp3File;
 import com.mpatric.mp3agic.NotSupportedException;
@@ -13,14 +15,19 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Utility class for mp3 files.
  *
  * @author Alkisum
- * @version 1.2
+ * @version 1.3
  * @since 1.0
  */
 final class Mp3 {
@@ -40,6 +47,11 @@ final class Mp3 {
         FRAME_SPECS.put("TYER", "Year");
     }
 
+    /**
+     * Writer executor writing the MP3 files, created on the first write.
+     */
+    private static ExecutorService writers;
+
     /**
      * Mp3 constructor.
      */
@@ -50,100 +62,94 @@ final class Mp3 {
     /**
      * Handle MP3 files.
      *
-     * @param album Album directory containing the songs
+     * @param album  Album directory containing the songs
+     * @param report Rules report of the album
+     * @return Album snapshot, listed again if the user retried after renaming
+     * the MP3 files
+     * @throws EmptyAlbumDirectoryException Empty album directory
      */
-    static void handleMp3Files(final File album) {
-        // list song files
-        File[] files;
-        try {
-            files = FileSystem.listSongs(album);
-        } catch (EmptyAlbumDirectoryException e) {
-            return;
-        }
-
-        // check if MP3 pattern is specified in configuration
-        if (Config.getMp3Pattern() == null) {
-            return;
-        }
-
-        // browse song files
-        for (File song : files) {
-
-            // check if MP3 file should be renamed
-            if (song.isFile()
-                    && song.getName().endsWith(".mp3")
-                    && !song.getName().matches(Config.getMp3Pattern())) {
-                FileSystem.openFileManager(
-                        song.getName() + " is not a valid filename",
-                        album.getAbsolutePath(), 2);
-                if (Terminal.askToRetry(2)) {
-                    handleMp3Files(album);
-                    return;
-                }
+    static AlbumSnapshot handleMp3Files(final AlbumSnapshot album,
+                                        final Rules.Report report)
+            throws EmptyAlbumDirectoryException {
+        // browse MP3 files that should be renamed
+        for (AlbumSnapshot.Entry song : report.getInvalidMp3Files()) {
+            FileSystem.openFileManager(
+                    song.getName() + " is not a valid filename",
+                    album.getDirectory().getAbsolutePath(), 2);
+            if (Terminal.askToRetry(2)) {
+                AlbumSnapshot refreshed = album.refresh();
+                return handleMp3Files(refreshed, Rules.check(refreshed));
             }
         }
+        return album;
     }
 
     /**
      * Read MP3 tag and check its validity.
      *
-     * @param album Album containing the MP3 to check
-     * @throws InvalidDataException    Invalid data
-     * @throws IOException             The file cannot be read
-     * @throws UnsupportedTagException Unsupported tag
+     * @param album   Album containing the MP3 to check
+     * @param changes Changes to write to the MP3 files when the album is
+     *                finished
+     * @return Album snapshot, listed again if the user retried after fixing
+     * the MP3 tags
+     * @throws InvalidDataException         Invalid data
+     * @throws IOException                  The file cannot be read
+     * @throws UnsupportedTagException      Unsupported tag
+     * @throws EmptyAlbumDirectoryException Empty album directory
      */
-    static void checkMp3Tag(final File album)
-            throws InvalidDataException, IOException, UnsupportedTagException {
-        // list song files
-        File[] files;
-        try {
-            files = FileSystem.listSongs(album);
-        } catch (EmptyAlbumDirectoryException e) {
-            return;
-        }
-
+    static AlbumSnapshot checkMp3Tag(final AlbumSnapshot album,
+                                     final PendingChanges changes)
+            throws InvalidDataException, IOException, UnsupportedTagException,
+            EmptyAlbumDirectoryException {
         // print audio quality info header
         if (Config.isPrintAudioQualityEnabled()) {
             Terminal.printInfo("KBit/s\t| Hz\t| Song", 2);
         }
 
-        // browse song files
-        Arrays.sort(files);
-        for (File song : files) {
-
-            // check only MP3
-            if (!song.getName().endsWith(".mp3")) {
-                continue;
-            }
+        // browse MP3 files
+        for (AlbumSnapshot.Entry entry : album.getMp3Files()) {
+            File song = entry.getFile();
 
-            // create MP3 file
-            Mp3File mp3File = new Mp3File(song);
+            // get MP3 tags, read once for every step without scanning the
+            // MPEG frames
+            TrackTags tags = TrackCache.getTags(entry);
 
-            // print audio quality info
+            // print audio quality info, the MPEG frames have to be scanned
             if (Config.isPrintAudioQualityEnabled()) {
-                printAudioQualityInfo(mp3File, song.getName());
+                printAudioQualityInfo(TrackCache.get(entry), song.getName());
             }
 
             // check if MP3 file has ID3V1 tag
-            if (mp3File.hasId3v1Tag()) {
+            if (tags.hasId3v1Tag() && !changes.hasId3v1TagRemoved(song)) {
                 Terminal.printWarning(song.getName() + " has Id3v1 tag", 2);
-                if (Terminal.askToRetry(2)) {
-                    checkMp3Tag(album);
-                    return;
+
+                String response = "";
+                if (!Config.isForceEnabled()) {
+                    // ask confirmation to delete ID3v1 tag
+                    Terminal.printQuestion("Delete Id3v1 tag? (Y/n)", 2);
+
+                    // get response from user
+                    response = Terminal.readLine();
+                }
+
+                // check if user wants to delete ID3v1 tag
+                if (Config.isForceEnabled()
+                        || !response.toLowerCase().equals("n")) {
+                    // delete ID3v1 tag when the album is finished
+                    changes.removeId3v1Tag(song);
                 }
             }
 
             // check if MP3 file has ID3V2 tag
-            if (mp3File.hasId3v2Tag()) {
+            if (tags.hasId3v2Tag()) {
 
-                // get frame sets
-                Map<String, ID3v2FrameSet> frameSets = mp3File.getId3v2Tag().
-                        getFrameSets();
+                // get frame ids
+                Set<String> frameIds = tags.getFrameIds();
 
                 // check for missing frame in MP3 tag
                 List<String> missingFrames = new ArrayList<>();
                 for (String frame : Config.getTagFrames()) {
-                    if (frameSets.get(frame) == null) {
+                    if (!frameIds.contains(frame)) {
                         missingFrames.add(frame);
                     }
                 }
@@ -154,13 +160,13 @@ final class Mp3 {
                             song.getName() + " has missing frames:\n"
                                     + printMissingFrames(missingFrames), 2);
                     if (Terminal.askToRetry(2)) {
-                        checkMp3Tag(album);
-                        return;
+                        return checkMp3Tag(album.refresh(), changes);
                     }
                 }
 
                 // check if MP3 tag has non-allowed frames
-                if (frameSets.size() > Config.getTagFrames().length) {
+                if (frameIds.size() > Config.getTagFrames().length
+                        && !changes.hasFramesRemoved(song)) {
                     String response = "";
                     if (!Config.isForceEnabled()) {
                         // ask confirmation to clean tag
@@ -168,35 +174,21 @@ final class Mp3 {
                                 song.getName() + " has invalid tag. Clean?", 2);
 
                         // get response from user
-                        response = Terminal.getScanner().nextLine();
+                        response = Terminal.readLine();
                     }
 
                     // check if user wants to clean tag
                     if (Config.isForceEnabled()
                             || !response.toLowerCase().equals("n")) {
-                        try {
-                            // clean tag
-                            cleanTag(mp3File);
-
-                            // delete mp3File instance to not use it again
-                            // when removing custom tag
-                            mp3File = null;
-                        } catch (NotSupportedException e) {
-                            // cannot clean tag: print error
-                            Terminal.printError("Cannot clean tag", 2);
-                            e.printStackTrace();
-                        }
+                        // clean tag when the album is finished
+                        changes.removeFrames(song, getFramesToDelete(tags));
                     }
                 }
             }
 
-            // create new instance if necessary
-            if (mp3File == null) {
-                mp3File = new Mp3File(song);
-            }
-
             // check if MP3 file has custom tag
-            if (!Config.isCustomTagAllowed() && mp3File.hasCustomTag()) {
+            if (!Config.isCustomTagAllowed() && tags.hasCustomTag()
+                    && !changes.hasCustomTagRemoved(song)) {
 
                 String response = "";
                 if (!Config.isForceEnabled()) {
@@ -204,45 +196,28 @@ final class Mp3 {
                     Terminal.printQuestion("Delete custom tag? (Y/n)", 2);
 
                     // get response from user
-                    response = Terminal.getScanner().nextLine();
+                    response = Terminal.readLine();
                 }
 
                 // check if user wants to delete custom tag
                 if (Config.isForceEnabled()
                         || !response.toLowerCase().equals("n")) {
-                    try {
-                        // delete custom tag
-                        mp3File.removeCustomTag();
-
-                        // save MP3 file
-                        saveMp3File(mp3File);
-
-                        // print confirmation
-                        Terminal.printConfirmation("Custom tag deleted", 2);
-                    } catch (NotSupportedException e) {
-                        // cannot delete custom tag: print error
-                        Terminal.printError("Cannot delete custom tag", 2);
-                        e.printStackTrace();
-                    }
+                    // delete custom tag when the album is finished
+                    changes.removeCustomTag(song);
                 }
             }
         }
+        return album;
     }
 
     /**
-     * Clean tag by removing the frames that are not specified in the
-     * configuration.
+     * Get the frames to delete from the given tags, the frames that are not
+     * specified in the configuration.
      *
-     * @param mp3File MP3 file to clean
-     * @throws IOException           The file cannot be saved, move or deleted
-     * @throws NotSupportedException Not supported tag
+     * @param tags MP3 file tags
+     * @return Ids of the frames to delete
      */
-    private static void cleanTag(final Mp3File mp3File)
-            throws IOException, NotSupportedException {
-        // get frame sets from MP3 file
-        Map<String, ID3v2FrameSet> frameSets = mp3File.getId3v2Tag()
-                .getFrameSets();
-
+    private static List<String> getFramesToDelete(final TrackTags tags) {
         // get tag frames specified in configuration
         List<String> tagFrames = Arrays.asList(Config.getTagFrames());
 
@@ -250,165 +225,199 @@ final class Mp3 {
         List<String> framesToDelete = new ArrayList<>();
 
         // add frames id to delete
-        for (String key : frameSets.keySet()) {
+        for (String key : tags.getFrameIds()) {
             if (!tagFrames.contains(key)) {
                 framesToDelete.add(key);
             }
         }
+        return framesToDelete;
+    }
 
-        // delete frames
-        for (String id : framesToDelete) {
-            mp3File.getId3v2Tag().clearFrameSet(id);
+    /**
+     * Write the changes collected during the album process to the MP3 files,
+     * each MP3 file is written once with all its changes. The MP3 files are
+     * written in parallel on the writer executor, the outcome of each MP3 file
+     * is printed in order once written.
+     *
+     * @param changes Changes to write
+     */
+    static void commitChanges(final PendingChanges changes) {
+        // plan mode: write the changes to the plan
+        if (Plan.isEnabled()) {
+            for (Map.Entry<File, PendingChanges.Track> entry
+                    : changes.getTracks().entrySet()) {
+                Plan.tag(entry.getKey().getParentFile(), entry.getKey(),
+                        entry.getValue());
+            }
+            return;
         }
 
-        // save
-        saveMp3File(mp3File);
+        // write the MP3 files in parallel
+        Map<File, Future<Long>> writes = new LinkedHashMap<>();
+        for (Map.Entry<File, PendingChanges.Track> entry
+                : changes.getTracks().entrySet()) {
+            File song = entry.getKey();
+            PendingChanges.Track track = entry.getValue();
+            writes.put(song, getWriters().submit(
+                    Metrics.bind(() -> commitTrack(song, track))));
+        }
 
-        // print confirmation
-        Terminal.printConfirmation("Tag cleaned", 2);
+        // print the outcome of each MP3 file
+        boolean coverSaved = false;
+        for (Map.Entry<File, Future<Long>> write : writes.entrySet()) {
+            File song = write.getKey();
+            PendingChanges.Track track = changes.getTracks().get(song);
+            try {
+                Metrics.written(write.getValue().get());
+
+                // print confirmations
+                if (!track.getFramesToRemove().isEmpty()) {
+                    Terminal.printConfirmation(
+                            song.getName() + ": tag cleaned", 2);
+                }
+                if (track.isId3v1TagRemoved()) {
+                    Terminal.printConfirmation(
+                            song.getName() + ": Id3v1 tag deleted", 2);
+                }
+                if (track.isCustomTagRemoved()) {
+                    Terminal.printConfirmation(
+                            song.getName() + ": custom tag deleted", 2);
+                }
+                coverSaved |= track.getCover() != null;
+            } catch (ExecutionException e) {
+                // cannot save MP3 file: print error, the other MP3 files are
+                // still written
+                Terminal.printError("Cannot save " + song.getName(), 2);
+                e.getCause().printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (coverSaved) {
+            Terminal.printConfirmation("Cover saved to MP3", 2);
+        }
     }
 
     /**
-     * Save MP3 file. A temporary file has to be created because the library
-     * mp3agic does not allow to save a MP3 file with the same name as the
-     * original file.
+     * Get the writer executor, create it if necessary.
      *
-     * @param mp3File MP3 file to save
-     * @throws IOException           The file cannot be saved, move or deleted
-     * @throws NotSupportedException Not supported tag
+     * @return Writer executor
      */
-    private static void saveMp3File(final Mp3File mp3File)
-            throws IOException, NotSupportedException {
-        File originalFile = new File(mp3File.getFilename());
-        String tmpFilePath = mp3File.getFilename() + "_tmp";
-        mp3File.save(tmpFilePath);
-        Files.delete(originalFile.toPath());
-        Files.move(new File(tmpFilePath).toPath(), originalFile.toPath());
+    private static synchronized ExecutorService getWriters() {
+        if (writers == null) {
+            writers = BoundedExecutor.create("mp3-writer",
+                    Config.getWriterThreads());
+        }
+        return writers;
     }
 
     /**
-     * Retrieve information from MP3 file tag and build the album directory name
-     * from it, using the mask specified in configuration.
+     * Write the given changes to the given MP3 file. The ID3v1 and custom tags
+     * are removed by truncating the end of the file, then only the ID3v2 tag
+     * is written.
      *
-     * @param files Files to use to retrieve information from MP3 tag
-     * @return Album directory name built from specified mask
+     * @param song  MP3 file to write
+     * @param track Changes to write
+     * @return Number of bytes written
      * @throws InvalidDataException    Invalid data
-     * @throws IOException             The file cannot be read
+     * @throws IOException             The file cannot be read or saved
      * @throws UnsupportedTagException Unsupported tag
+     * @throws NotSupportedException   Not supported tag
      */
-    static String getAlbumDirectoryNameFromMask(final File[] files)
-            throws InvalidDataException, IOException, UnsupportedTagException {
-        // get information from one MP3 file in the album directory
-        for (File file : files) {
-            if (file.getName().endsWith(".mp3")) {
-                // get artist
-                String artist = getArtistFromMp3Tag(file);
-
-                // get album
-                String album = getAlbumFromMp3Tag(file);
-
-                // get year
-                String year = getYearFromMp3Tag(file);
-
-                // get mask
-                String mask = Config.getAlbumMask();
-
-                // replace %a by artist name
-                if (artist != null) {
-                    mask = mask.replaceAll("%a", artist);
-                } else {
-                    Terminal.printWarning("Artist cannot be used in album "
-                            + "directory mask (null)", 2);
-                }
-
-                // replace %b by album name
-                if (album != null) {
-                    mask = mask.replaceAll("%b", album);
-                } else {
-                    Terminal.printWarning("Album cannot be used in album "
-                            + "directory mask (null)", 2);
-                }
+    private static long commitTrack(final File song,
+                                    final PendingChanges.Track track)
+            throws InvalidDataException, IOException, UnsupportedTagException,
+            NotSupportedException {
+        long written = 0;
 
-                // replace %y by song year
-                if (year != null) {
-                    mask = mask.replaceAll("%y", year);
-                } else {
-                    Terminal.printWarning("Year cannot be used in album "
-                            + "directory mask (null)", 2);
-                }
+        // the trailing tags are at the end of the file: cut them
+        if (track.isId3v1TagRemoved() || track.isCustomTagRemoved()) {
+            written += TrailingTags.strip(song, track.isId3v1TagRemoved(),
+                    track.isCustomTagRemoved());
+        }
 
-                // remove illegal characters
-                mask = mask.replaceAll("[\\\\/:*?\"<>|]", "");
+        // no ID3v2 change
+        if (track.getFramesToRemove().isEmpty() && track.getCover() == null) {
+            return written;
+        }
 
-                return mask;
+        // get ID3v2 tag, read without scanning the MPEG frames
+        AbstractID3v2Tag tag = TagReader.readId3v2Tag(song);
+        if (tag == null) {
+            if (track.getCover() == null) {
+                // no tag to clean
+                return written;
             }
+            tag = new ID3v24Tag();
         }
+        applyChanges(tag, track);
 
-        // no MP3 file in the album directory
-        return null;
+        // save MP3 tag
+        return written + saveTag(song, tag);
     }
 
     /**
-     * Read the given file and retrieve the artist written in the MP3 tag.
+     * Apply the given changes to the given ID3v2 tag.
      *
-     * @param file MP3 file to read
-     * @return The artist written in the MP3 file
-     * @throws InvalidDataException    Invalid data
-     * @throws IOException             The file cannot be read
-     * @throws UnsupportedTagException Unsupported tag
+     * @param tag   ID3v2 tag to change
+     * @param track Changes to apply
      */
-    private static String getArtistFromMp3Tag(final File file)
-            throws InvalidDataException, IOException, UnsupportedTagException {
-        String artist = "";
-        Mp3File mp3File = new Mp3File(file);
-        if (mp3File.hasId3v1Tag()) {
-            artist = mp3File.getId3v1Tag().getArtist();
-        } else if (mp3File.hasId3v2Tag()) {
-            artist = mp3File.getId3v2Tag().getArtist();
+    private static void applyChanges(final ID3v2 tag,
+                                     final PendingChanges.Track track) {
+        // delete frames
+        for (String id : track.getFramesToRemove()) {
+            tag.clearFrameSet(id);
+        }
+
+        // set cover
+        if (track.getCover() != null) {
+            tag.setAlbumImage(track.getCover(), "image/jpeg");
         }
-        return artist;
     }
 
     /**
-     * Read the given file and retrieve the album written in the MP3 tag.
+     * Save the given ID3v2 tag to the given MP3 file. Only the tag region is
+     * overwritten when the tag fits in the space used by the old tag.
      *
-     * @param file MP3 file to read
-     * @return The album written in the MP3 file
-     * @throws InvalidDataException    Invalid data
-     * @throws IOException             The file cannot be read
-     * @throws UnsupportedTagException Unsupported tag
+     * @param song MP3 file to save
+     * @param tag  ID3v2 tag to save
+     * @return Number of bytes written
+     * @throws IOException           The file cannot be saved
+     * @throws NotSupportedException Not supported tag
      */
-    private static String getAlbumFromMp3Tag(final File file)
-            throws InvalidDataException, IOException, UnsupportedTagException {
-        String album = "";
-        Mp3File mp3File = new Mp3File(file);
-        if (mp3File.hasId3v1Tag()) {
-            album = mp3File.getId3v1Tag().getAlbum();
-        } else if (mp3File.hasId3v2Tag()) {
-            album = mp3File.getId3v2Tag().getAlbum();
+    private static long saveTag(final File song, final AbstractID3v2Tag tag)
+            throws IOException, NotSupportedException {
+        try {
+            return TagWriter.write(song, tag);
+        } finally {
+            // the file has been rewritten
+            TrackCache.invalidate(song);
         }
-        return album;
     }
 
     /**
-     * Read the given file and retrieve the year written in the MP3 tag.
+     * Retrieve information from MP3 file tag and build the album directory name
+     * from it, using the mask specified in configuration.
      *
-     * @param file MP3 file to read
-     * @return The year written in the MP3 file
+     * @param album Album to use to retrieve information from MP3 tag
+     * @return Album directory name built from specified mask
      * @throws InvalidDataException    Invalid data
      * @throws IOException             The file cannot be read
      * @throws UnsupportedTagException Unsupported tag
      */
-    private static String getYearFromMp3Tag(final File file)
+    static String getAlbumDirectoryNameFromMask(final AlbumSnapshot album)
             throws InvalidDataException, IOException, UnsupportedTagException {
-        String year = "";
-        Mp3File mp3File = new Mp3File(file);
-        if (mp3File.hasId3v1Tag()) {
-            year = mp3File.getId3v1Tag().getYear();
-        } else if (mp3File.hasId3v2Tag()) {
-            year = mp3File.getId3v2Tag().getYear();
+        // get information from one MP3 file in the album directory
+        List<AlbumSnapshot.Entry> mp3Files = album.getMp3Files();
+        if (mp3Files.isEmpty()) {
+            // no MP3 file in the album directory
+            return null;
         }
-        return year;
+        TrackTags tags = TrackCache.getTags(mp3Files.get(0));
+
+        // apply the mask compiled from the configuration
+        return AlbumMask.get().format(tags, mp3Files.size());
     }
 
     /**
@@ -428,74 +437,44 @@ final class Mp3 {
     }
 
     /**
-     * Get the cover from the MP3 files contained in the given album.
+     * Load the given cover to the tags of the MP3 files contained in the given
+     * album whose cover differs from the cover file. The cover of each MP3
+     * file is compared by digest, the cover file is read only if at least one
+     * MP3 file has to be written. The cover is written when the album is
+     * finished.
      *
-     * @param album Album to get the cover for
-     * @return Album cover
+     * @param album       Album to set the cover for
+     * @param coverFile   Cover file to set
+     * @param coverDigest Digest of the cover file, null if unknown because
+     *                    the cover file is planned to be converted
+     * @param changes     Changes to write to the MP3 files when the album is
+     *                    finished
      * @throws InvalidDataException    Invalid data
      * @throws IOException             The file cannot be read
      * @throws UnsupportedTagException Unsupported tag
      */
-    static byte[] getCoverFromMp3Tag(final File album)
+    static void loadCoverToMp3(final AlbumSnapshot album,
+                               final File coverFile, final byte[] coverDigest,
+                               final PendingChanges changes)
             throws InvalidDataException, IOException, UnsupportedTagException {
-        // list song files
-        File[] files;
-        try {
-            files = FileSystem.listSongs(album);
-        } catch (EmptyAlbumDirectoryException e) {
-            return null;
-        }
-
-        // browse files
-        for (File file : files) {
-            if (file.getName().endsWith(".mp3")) {
-                // get MP3 file
-                Mp3File mp3File = new Mp3File(file);
-
-                // get cover from MP3 file tag
-                return mp3File.getId3v2Tag().getAlbumImage();
+        byte[] coverFileBytes = null;
+
+        // browse MP3 files
+        for (AlbumSnapshot.Entry entry : album.getMp3Files()) {
+            // compare the MP3 cover with the cover file
+            byte[] mp3CoverDigest = TrackCache.getCoverDigest(entry);
+            if (coverDigest != null
+                    && Arrays.equals(mp3CoverDigest, coverDigest)) {
+                continue;
             }
-        }
-        return null;
-    }
-
-    /**
-     * Load the given cover to the MP3 file tags contained in the given album.
-     *
-     * @param album          Album to set the cover for
-     * @param coverFileBytes Cover to set
-     * @throws InvalidDataException    Invalid data
-     * @throws IOException             The file cannot be read
-     * @throws UnsupportedTagException Unsupported tag
-     * @throws NotSupportedException   Not supported tag
-     */
-    static void loadCoverToMp3(final File album,
-                               final byte[] coverFileBytes)
-            throws InvalidDataException, IOException, UnsupportedTagException,
-            NotSupportedException {
-        // list song files
-        File[] files;
-        try {
-            files = FileSystem.listSongs(album);
-        } catch (EmptyAlbumDirectoryException e) {
-            return;
-        }
-
-        // browse files
-        for (File file : files) {
-            if (file.getName().endsWith(".mp3")) {
-                // get MP3 file
-                Mp3File mp3File = new Mp3File(file);
-
-                // set cover
-                mp3File.getId3v2Tag().setAlbumImage(
-                        coverFileBytes, "image/jpeg");
 
-                // save MP3 file
-                saveMp3File(mp3File);
+            // read cover bytes from file, shared by the MP3 files, the
+            // cover file is not read in plan mode
+            if (coverFileBytes == null && !Plan.isEnabled()) {
+                coverFileBytes = Files.readAllBytes(coverFile.toPath());
             }
+            changes.setCover(entry.getFile(), coverFile, coverFileBytes);
         }
-        Terminal.printConfirmation("Cover saved to MP3", 2);
     }
 
     /**
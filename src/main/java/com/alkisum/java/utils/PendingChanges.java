@@ -0,0 +1,191 @@
+package com.alkisum.java.utils;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tag changes collected for the MP3 files of an album during the album
+ * process. The changes of each MP3 file are written at once when the album is
+ * finished, so each MP3 file is written at most once per run.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class PendingChanges {
+
+    /**
+     * Changes mapped by MP3 file, in the order they have been collected.
+     */
+    private final Map<File, Track> tracks = new LinkedHashMap<>();
+
+    /**
+     * Add the given frames to the frames to remove from the given MP3 file.
+     *
+     * @param song     MP3 file
+     * @param frameIds Ids of the frames to remove
+     */
+    void removeFrames(final File song, final Collection<String> frameIds) {
+        getTrack(song).framesToRemove.addAll(frameIds);
+    }
+
+    /**
+     * Remove the ID3v1 tag of the given MP3 file.
+     *
+     * @param song MP3 file
+     */
+    void removeId3v1Tag(final File song) {
+        getTrack(song).id3v1TagRemoved = true;
+    }
+
+    /**
+     * Remove the custom tag of the given MP3 file.
+     *
+     * @param song MP3 file
+     */
+    void removeCustomTag(final File song) {
+        getTrack(song).customTagRemoved = true;
+    }
+
+    /**
+     * Replace the cover of the given MP3 file.
+     *
+     * @param song      MP3 file
+     * @param coverFile Cover file
+     * @param cover     Cover bytes, null if the cover file is not read (plan
+     *                  mode)
+     */
+    void setCover(final File song, final File coverFile, final byte[] cover) {
+        Track track = getTrack(song);
+        track.coverFile = coverFile;
+        track.cover = cover;
+    }
+
+    /**
+     * @param song MP3 file
+     * @return true if frames are already removed from the given MP3 file,
+     * false otherwise
+     */
+    boolean hasFramesRemoved(final File song) {
+        Track track = tracks.get(song);
+        return track != null && !track.framesToRemove.isEmpty();
+    }
+
+    /**
+     * @param song MP3 file
+     * @return true if the ID3v1 tag of the given MP3 file is already removed,
+     * false otherwise
+     */
+    boolean hasId3v1TagRemoved(final File song) {
+        Track track = tracks.get(song);
+        return track != null && track.id3v1TagRemoved;
+    }
+
+    /**
+     * @param song MP3 file
+     * @return true if the custom tag of the given MP3 file is already
+     * removed, false otherwise
+     */
+    boolean hasCustomTagRemoved(final File song) {
+        Track track = tracks.get(song);
+        return track != null && track.customTagRemoved;
+    }
+
+    /**
+     * @return true if no change has been collected, false otherwise
+     */
+    boolean isEmpty() {
+        return tracks.isEmpty();
+    }
+
+    /**
+     * @return Changes mapped by MP3 file, in the order they have been
+     * collected
+     */
+    Map<File, Track> getTracks() {
+        return Collections.unmodifiableMap(tracks);
+    }
+
+    /**
+     * Get the changes of the given MP3 file, create them if necessary.
+     *
+     * @param song MP3 file
+     * @return Changes of the MP3 file
+     */
+    private Track getTrack(final File song) {
+        return tracks.computeIfAbsent(song, k -> new Track());
+    }
+
+    /**
+     * Changes collected for a MP3 file.
+     */
+    static final class Track {
+
+        /**
+         * Ids of the frames to remove.
+         */
+        private final Set<String> framesToRemove = new LinkedHashSet<>();
+
+        /**
+         * Flag set to true if the ID3v1 tag has to be removed, false
+         * otherwise.
+         */
+        private boolean id3v1TagRemoved = false;
+
+        /**
+         * Flag set to true if the custom tag has to be removed, false
+         * otherwise.
+         */
+        private boolean customTagRemoved = false;
+
+        /**
+         * Cover file to set, null if the cover does not change.
+         */
+        private File coverFile = null;
+
+        /**
+         * Cover bytes to set, null if the cover does not change.
+         */
+        private byte[] cover = null;
+
+        /**
+         * @return Ids of the frames to remove
+         */
+        Set<String> getFramesToRemove() {
+            return Collections.unmodifiableSet(framesToRemove);
+        }
+
+        /**
+         * @return true if the ID3v1 tag has to be removed, false otherwise
+         */
+        boolean isId3v1TagRemoved() {
+            return id3v1TagRemoved;
+        }
+
+        /**
+         * @return true if the custom tag has to be removed, false otherwise
+         */
+        boolean isCustomTagRemoved() {
+            return customTagRemoved;
+        }
+
+        /**
+         * @return Cover file to set, null if the cover does not change
+         */
+        File getCoverFile() {
+            return coverFile;
+        }
+
+        /**
+         * @return Cover bytes to set, null if the cover does not change
+         */
+        byte[] getCover() {
+            return cover;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.alkisum.java.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Action plan written by the --plan mode and executed by the --apply mode.
+ * In plan mode, the library is scanned without asking anything to the user
+ * and every action (rename, delete, cover conversion, tag change) is written
+ * to the plan file instead of being executed. The plan file is a JSON array
+ * containing one action per line, streamed while the albums are processed. In
+ * apply mode, the actions of the plan are executed album by album, the albums
+ * being processed in parallel.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+public final class Plan {
+
+    /**
+     * Rename action.
+     */
+    private static final String RENAME = "rename";
+
+    /**
+     * Delete action.
+     */
+    private static final String DELETE = "delete";
+
+    /**
+     * Cover conversion action.
+     */
+    private static final String CONVERT = "convert";
+
+    /**
+     * Tag change action.
+     */
+    private static final String TAG = "tag";
+
+    /**
+     * Writer of the plan file, null if the plan file is not open.
+     */
+    private static BufferedWriter writer;
+
+    /**
+     * Flag set to true if no action has been written yet, false otherwise.
+     */
+    private static boolean first = true;
+
+    /**
+     * Source files of the files planned to be renamed, mapped by their
+     * target file.
+     */
+    private static final Map<File, File> RENAMED = new ConcurrentHashMap<>();
+
+    /**
+     * Target files planned to be written by a cover conversion.
+     */
+    private static final Set<File> CONVERTED = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Plan constructor.
+     */
+    private Plan() {
+
+    }
+
+    /**
+     * @return true if the actions are written to the plan instead of being
+     * executed, false otherwise
+     */
+    static boolean isEnabled() {
+        return Config.getPlanFile() != null;
+    }
+
+    /**
+     * Open the plan file given in the --plan argument.
+     *
+     * @throws IOException The plan file cannot be written
+     */
+    static synchronized void start() throws IOException {
+        writer = Files.newBufferedWriter(new File(
+                Config.getPlanFile()).toPath(), StandardCharsets.UTF_8);
+        writer.write("[");
+        writer.newLine();
+        writer.flush();
+        first = true;
+    }
+
+    /**
+     * Close the plan file.
+     */
+    static synchronized void finish() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.newLine();
+            writer.write("]");
+            writer.newLine();
+            writer.close();
+            Terminal.printConfirmation("Plan written to "
+                    + Config.getPlanFile(), 0);
+        } catch (IOException e) {
+            Terminal.printError("Cannot write plan", 0);
+            e.printStackTrace();
+        }
+        writer = null;
+    }
+
+    /**
+     * Plan to rename a file or an album directory.
+     *
+     * @param album  Album directory
+     * @param src    File to rename
+     * @param target Renamed file
+     */
+    static void rename(final File album, final File src, final File target) {
+        RENAMED.put(target, src);
+        record(album, RENAME, "\"source\":" + path(src)
+                        + ",\"target\":" + path(target),
+                "rename " + src.getName() + " to " + target.getName());
+    }
+
+    /**
+     * Plan to delete a file.
+     *
+     * @param album Album directory
+     * @param file  File to delete
+     */
+    static void delete(final File album, final File file) {
+        record(album, DELETE, "\"path\":" + path(file),
+                "delete " + file.getName());
+    }
+
+    /**
+     * Plan to convert an image to a baseline JPEG.
+     *
+     * @param album  Album directory
+     * @param src    Image to convert
+     * @param target Converted JPEG image
+     */
+    static void convert(final File album, final File src, final File target) {
+        CONVERTED.add(target);
+        record(album, CONVERT, "\"source\":" + path(src)
+                        + ",\"target\":" + path(target),
+                "convert " + src.getName() + " to " + target.getName());
+    }
+
+    /**
+     * Plan to change the tag of a MP3 file.
+     *
+     * @param album Album directory
+     * @param song  MP3 file
+     * @param track Changes of the MP3 file
+     */
+    static void tag(final File album, final File song,
+                    final PendingChanges.Track track) {
+        StringBuilder fields = new StringBuilder();
+        fields.append("\"path\":").append(path(song));
+        fields.append(",\"removeFrames\":[");
+        boolean firstFrame = true;
+        for (String id : track.getFramesToRemove()) {
+            if (!firstFrame) {
+                fields.append(',');
+            }
+            fields.append(Json.quote(id));
+            firstFrame = false;
+        }
+        fields.append(']');
+        fields.append(",\"removeId3v1Tag\":")
+                .append(track.isId3v1TagRemoved());
+        fields.append(",\"removeCustomTag\":")
+                .append(track.isCustomTagRemoved());
+        if (track.getCoverFile() != null) {
+            fields.append(",\"cover\":").append(path(track.getCoverFile()));
+        }
+        record(album, TAG, fields.toString(),
+                "change tag of " + song.getName());
+    }
+
+    /**
+     * Get the file holding the current content of the given file, taking the
+     * planned actions into account.
+     *
+     * @param file File to get the content for
+     * @return File holding the content, null if the content is written by a
+     * planned cover conversion
+     */
+    static File getSource(final File file) {
+        if (CONVERTED.contains(file)) {
+            return null;
+        }
+        return RENAMED.getOrDefault(file, file);
+    }
+
+    /**
+     * Write an action to the plan file.
+     *
+     * @param album   Album directory
+     * @param action  Action type
+     * @param fields  JSON fields of the action
+     * @param message Message describing the action
+     */
+    private static void record(final File album, final String action,
+                               final String fields, final String message) {
+        synchronized (Plan.class) {
+            if (writer == null) {
+                return;
+            }
+            try {
+                if (!first) {
+                    writer.write(",");
+                    writer.newLine();
+                }
+                writer.write("{\"album\":" + path(album) + ",\"action\":"
+                        + Json.quote(action) + "," + fields + "}");
+                writer.flush();
+                first = false;
+            } catch (IOException e) {
+                Terminal.printError("Cannot write plan", 2);
+                e.printStackTrace();
+                return;
+            }
+        }
+        Terminal.printInfo("Planned: " + message, 2);
+    }
+
+    /**
+     * @param file File
+     * @return JSON string of the absolute path of the file
+     */
+    private static String path(final File file) {
+        return Json.quote(file.getAbsolutePath());
+    }
+
+    /**
+     * Execute the actions of the given plan file. The actions of each album
+     * are executed in order, the albums are processed in parallel when
+     * several threads are given in the --threads argument.
+     *
+     * @param planFile Plan file to execute
+     */
+    public static void apply(final File planFile) {
+        // read plan
+        List<Map<String, Object>> actions;
+        try {
+            actions = read(planFile);
+        } catch (IOException e) {
+            Terminal.printError("Cannot read plan " + planFile.getName(), 0);
+            e.printStackTrace();
+            return;
+        }
+
+        // group actions by album, in their order
+        Map<String, List<Map<String, Object>>> albums = new LinkedHashMap<>();
+        for (Map<String, Object> action : actions) {
+            albums.computeIfAbsent(getString(action, "album"),
+                    k -> new ArrayList<>()).add(action);
+        }
+
+        if (Config.getThreads() <= 1) {
+            for (Map.Entry<String, List<Map<String, Object>>> album
+                    : albums.entrySet()) {
+                applyAlbum(album.getKey(), album.getValue());
+            }
+            return;
+        }
+
+        // apply albums in parallel, the output of each album is printed as
+        // one block
+        Console.start();
+        ExecutorService executor = BoundedExecutor.create("plan",
+                Config.getThreads());
+        for (Map.Entry<String, List<Map<String, Object>>> album
+                : albums.entrySet()) {
+            executor.execute(() -> {
+                Console.beginBlock(null);
+                try {
+                    applyAlbum(album.getKey(), album.getValue());
+                } finally {
+                    Console.endBlock();
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Console.stop();
+    }
+
+    /**
+     * Read the actions of the given plan file.
+     *
+     * @param planFile Plan file
+     * @return Actions
+     * @throws IOException The plan file cannot be read or is invalid
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> read(final File planFile)
+            throws IOException {
+        Object plan = Json.parse(new String(
+                Files.readAllBytes(planFile.toPath()), StandardCharsets.UTF_8));
+        if (!(plan instanceof List)) {
+            throw new IOException("The plan is not an array of actions");
+        }
+        List<Map<String, Object>> actions = new ArrayList<>();
+        for (Object action : (List<Object>) plan) {
+            if (!(action instanceof Map)) {
+                throw new IOException("Invalid action: " + action);
+            }
+            actions.add((Map<String, Object>) action);
+        }
+        return actions;
+    }
+
+    /**
+     * Execute the actions of the given album in order. The consecutive tag
+     * changes are written together.
+     *
+     * @param album   Album directory path
+     * @param actions Actions of the album
+     */
+    private static void applyAlbum(final String album,
+                                   final List<Map<String, Object>> actions) {
+        Terminal.printInfo(album + ":", 1);
+        PendingChanges changes = new PendingChanges();
+        Map<String, byte[]> covers = new HashMap<>();
+        for (Map<String, Object> action : actions) {
+            String type = getString(action, "action");
+            if (TAG.equals(type)) {
+                addTagChanges(action, changes, covers);
+                continue;
+            }
+
+            // write the tag changes before the next action
+            Mp3.commitChanges(changes);
+            changes = new PendingChanges();
+
+            if (RENAME.equals(type)) {
+                applyRename(new File(getString(action, "source")),
+                        new File(getString(action, "target")));
+            } else if (DELETE.equals(type)) {
+                applyDelete(new File(getString(action, "path")));
+            } else if (CONVERT.equals(type)) {
+                applyConvert(new File(getString(action, "source")),
+                        new File(getString(action, "target")));
+            } else {
+                Terminal.printError("Unknown action " + type, 2);
+            }
+        }
+        Mp3.commitChanges(changes);
+    }
+
+    /**
+     * Add the tag changes of the given action.
+     *
+     * @param action  Tag action
+     * @param changes Changes to add to
+     * @param covers  Cover bytes already read, mapped by cover path
+     */
+    @SuppressWarnings("unchecked")
+    private static void addTagChanges(final Map<String, Object> action,
+                                      final PendingChanges changes,
+                                      final Map<String, byte[]> covers) {
+        File song = new File(getString(action, "path"));
+        Object frames = action.get("removeFrames");
+        if (frames instanceof List) {
+            List<String> frameIds = new ArrayList<>();
+            for (Object id : (List<Object>) frames) {
+                frameIds.add(String.valueOf(id));
+            }
+            changes.removeFrames(song, frameIds);
+        }
+        if (Boolean.TRUE.equals(action.get("removeId3v1Tag"))) {
+            changes.removeId3v1Tag(song);
+        }
+        if (Boolean.TRUE.equals(action.get("removeCustomTag"))) {
+            changes.removeCustomTag(song);
+        }
+        String cover = getString(action, "cover");
+        if (cover != null) {
+            try {
+                // read cover bytes once, shared by the MP3 files
+                byte[] bytes = covers.get(cover);
+                if (bytes == null) {
+                    bytes = Files.readAllBytes(new File(cover).toPath());
+                    covers.put(cover, bytes);
+                }
+                changes.setCover(song, new File(cover), bytes);
+            } catch (IOException e) {
+                Terminal.printError("Cannot read cover " + cover, 2);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Rename the given file or album directory.
+     *
+     * @param src    File to rename
+     * @param target Renamed file
+     */
+    private static void applyRename(final File src, final File target) {
+        try {
+            Files.move(src.toPath(), target.toPath());
+            Terminal.printConfirmation(src.getName() + " renamed", 2);
+        } catch (IOException e) {
+            Terminal.printError("Cannot rename " + src.getName() + " to "
+                    + target.getName(), 2);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Delete the given file.
+     *
+     * @param file File to delete
+     */
+    private static void applyDelete(final File file) {
+        try {
+            Files.delete(file.toPath());
+            Terminal.printConfirmation(file.getName() + " deleted", 2);
+        } catch (IOException e) {
+            Terminal.printError("Cannot delete " + file.getName(), 2);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Convert the given image to a baseline JPEG.
+     *
+     * @param src    Image to convert
+     * @param target Converted JPEG image
+     */
+    private static void applyConvert(final File src, final File target) {
+        try {
+            CoverConverter.convert(src, target);
+            Terminal.printConfirmation(src.getName() + " converted to "
+                    + target.getName(), 2);
+        } catch (IOException e) {
+            Terminal.printError("Cannot convert " + src.getName(), 2);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param action Action
+     * @param name   Field name
+     * @return Field value as string, null if the field is missing
+     */
+    private static String getString(final Map<String, Object> action,
+                                    final String name) {
+        Object value = action.get(name);
+        if (value == null) {
+            return null;
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,130 @@
+package com.alkisum.java.utils;
+
+import com.mpatric.mp3agic.InvalidDataException;
+import com.mpatric.mp3agic.UnsupportedTagException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Utility class preparing the next albums in the background while the
+ * current album is processed, mostly while the user answers its questions.
+ * The album directory is listed, the MP3 tags and the cover digests are read
+ * into {@link TrackCache} and the cover file is checked, the album process
+ * then finds everything it reads in the caches.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class Prefetcher {
+
+    /**
+     * Prefetch executor, created when the first album is prefetched.
+     */
+    private static ExecutorService executor;
+
+    /**
+     * Prefetcher constructor.
+     */
+    private Prefetcher() {
+
+    }
+
+    /**
+     * Prefetch the given album directory in the background.
+     *
+     * @param album Album directory
+     * @return Snapshot of the album directory, null if it cannot be listed
+     */
+    static Future<AlbumSnapshot> submit(final File album) {
+        return getExecutor().submit(() -> prefetch(album));
+    }
+
+    /**
+     * Wait for the given album to be prefetched.
+     *
+     * @param prefetched Album being prefetched, null if none
+     * @return Snapshot of the album directory, null if the album has not
+     * been prefetched or cannot be listed
+     */
+    static AlbumSnapshot get(final Future<AlbumSnapshot> prefetched) {
+        if (prefetched == null) {
+            return null;
+        }
+        try {
+            return prefetched.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Get the prefetch executor, create it if necessary. One thread is
+     * enough, the albums are processed one at a time on the main thread.
+     *
+     * @return Prefetch executor
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = BoundedExecutor.create("prefetch", 1);
+        }
+        return executor;
+    }
+
+    /**
+     * List the given album directory and read what the album process reads.
+     * The errors are ignored, they are reported by the album process.
+     *
+     * @param album Album directory
+     * @return Snapshot of the album directory, null if it cannot be listed
+     */
+    private static AlbumSnapshot prefetch(final File album) {
+        AlbumSnapshot snapshot;
+        Metrics.Stage previous = Metrics.attach(Metrics.Stage.LIST);
+        try {
+            snapshot = AlbumSnapshot.list(album);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            Metrics.attach(previous);
+        }
+
+        // nothing is read from an album skipped by the index
+        if (snapshot.getEntries().isEmpty()
+                || ScanIndex.isUnchanged(snapshot)) {
+            return snapshot;
+        }
+
+        try {
+            // read MP3 tags checked against the frames or used by the mask
+            if (Config.getTagFrames() != null
+                    || Config.getAlbumMask() != null) {
+                Metrics.attach(Metrics.Stage.TAGS);
+                for (AlbumSnapshot.Entry entry : snapshot.getMp3Files()) {
+                    TrackCache.getTags(entry);
+                }
+            }
+
+            // check cover file and read the MP3 covers compared with it
+            Metrics.attach(Metrics.Stage.COVER);
+            if (Cover.prefetch(snapshot)) {
+                for (AlbumSnapshot.Entry entry : snapshot.getMp3Files()) {
+                    TrackCache.getCoverDigest(entry);
+                }
+            }
+        } catch (InvalidDataException | IOException
+                | UnsupportedTagException e) {
+            // reported when the album is processed
+        } finally {
+            Metrics.attach(previous);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,289 @@
+package com.alkisum.java.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Validation rules of the file and album directory names: the MP3 pattern,
+ * the album pattern, the allowed extensions, the cover file name and the
+ * extra rules given in the properties file. The rules are compiled once when
+ * the configuration is built and an album is checked against all of them in
+ * one pass over its snapshot.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class Rules {
+
+    /**
+     * Target of the rules matched against the MP3 filenames.
+     */
+    private static final String MP3 = "mp3";
+
+    /**
+     * Target of the rules matched against every filename.
+     */
+    private static final String FILE = "file";
+
+    /**
+     * Target of the rules matched against the album directory name.
+     */
+    private static final String ALBUM = "album";
+
+    /**
+     * Compiled MP3 pattern, null if not specified in configuration.
+     */
+    private static Pattern mp3Pattern;
+
+    /**
+     * Compiled album pattern, null if not specified in configuration.
+     */
+    private static Pattern albumPattern;
+
+    /**
+     * Extensions of the files allowed in the album directories.
+     */
+    private static Set<String> allowedExtensions = Collections.emptySet();
+
+    /**
+     * Cover file name, null if not specified in configuration.
+     */
+    private static String coverFileName;
+
+    /**
+     * Compiled extra rules.
+     */
+    private static List<Rule> extraRules = Collections.emptyList();
+
+    /**
+     * Rules constructor.
+     */
+    private Rules() {
+
+    }
+
+    /**
+     * Compile the rules specified in configuration.
+     *
+     * @throws IOException A pattern or an extra rule is invalid
+     */
+    static void compile() throws IOException {
+        mp3Pattern = compile("mp3.pattern", Config.getMp3Pattern());
+        albumPattern = compile("album.pattern", Config.getAlbumPattern());
+        allowedExtensions = new HashSet<>(Arrays.asList(
+                Config.getAllowedExtensions()));
+        coverFileName = Config.getCoverFileName();
+
+        // extra rules are written as <target>:<pattern>
+        List<Rule> rules = new ArrayList<>();
+        for (Map.Entry<String, String> rule : Config.getRules().entrySet()) {
+            String[] definition = rule.getValue().split(":", 2);
+            if (definition.length != 2 || !(definition[0].equals(MP3)
+                    || definition[0].equals(FILE)
+                    || definition[0].equals(ALBUM))) {
+                throw new IOException("Invalid rule." + rule.getKey()
+                        + ", expected <mp3|file|album>:<pattern>");
+            }
+            rules.add(new Rule(rule.getKey(), definition[0],
+                    compile("rule." + rule.getKey(), definition[1])));
+        }
+        extraRules = rules;
+    }
+
+    /**
+     * Compile the given pattern.
+     *
+     * @param property Property holding the pattern
+     * @param regex    Pattern to compile, null for none
+     * @return Compiled pattern, null if the given pattern is null
+     * @throws IOException The pattern is invalid
+     */
+    private static Pattern compile(final String property, final String regex)
+            throws IOException {
+        if (regex == null) {
+            return null;
+        }
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IOException("Invalid pattern in " + property, e);
+        }
+    }
+
+    /**
+     * @param name MP3 filename
+     * @return true if the name matches the MP3 pattern or if no MP3 pattern
+     * is specified, false otherwise
+     */
+    static boolean isValidMp3Name(final String name) {
+        return mp3Pattern == null || mp3Pattern.matcher(name).matches();
+    }
+
+    /**
+     * @param name Album directory name
+     * @return true if the name matches the album pattern or if no album
+     * pattern is specified, false otherwise
+     */
+    static boolean isValidAlbumName(final String name) {
+        return albumPattern == null || albumPattern.matcher(name).matches();
+    }
+
+    /**
+     * @param name Filename
+     * @return true if the file is the cover file or has an allowed extension,
+     * false otherwise
+     */
+    static boolean isAllowedFile(final String name) {
+        if (name.equals(coverFileName)) {
+            return true;
+        }
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && allowedExtensions.contains(name.substring(dot + 1));
+    }
+
+    /**
+     * Check the given album against every rule in one pass over its entries.
+     *
+     * @param album Album to check
+     * @return Report of the entries breaking the rules
+     */
+    static Report check(final AlbumSnapshot album) {
+        Report report = new Report();
+        String albumName = album.getDirectory().getName();
+        for (Rule rule : extraRules) {
+            if (rule.target.equals(ALBUM) && !rule.matches(albumName)) {
+                report.violations.add(rule.describe(albumName));
+            }
+        }
+        for (AlbumSnapshot.Entry entry : album.getEntries()) {
+            String name = entry.getName();
+            if (entry.isDirectory()) {
+                report.directories.add(entry);
+                continue;
+            }
+            boolean mp3 = name.endsWith(".mp3");
+            if (mp3 && !isValidMp3Name(name)) {
+                report.invalidMp3Files.add(entry);
+            }
+            for (Rule rule : extraRules) {
+                if ((rule.target.equals(FILE)
+                        || mp3 && rule.target.equals(MP3))
+                        && !rule.matches(name)) {
+                    report.violations.add(rule.describe(name));
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Entries of an album breaking the rules.
+     */
+    static final class Report {
+
+        /**
+         * Directories found in the album directory.
+         */
+        private final List<AlbumSnapshot.Entry> directories =
+                new ArrayList<>();
+
+        /**
+         * MP3 files whose name does not match the MP3 pattern.
+         */
+        private final List<AlbumSnapshot.Entry> invalidMp3Files =
+                new ArrayList<>();
+
+        /**
+         * Descriptions of the extra rules broken by the album.
+         */
+        private final List<String> violations = new ArrayList<>();
+
+        /**
+         * Report constructor.
+         */
+        private Report() {
+
+        }
+
+        /**
+         * @return Directories found in the album directory
+         */
+        List<AlbumSnapshot.Entry> getDirectories() {
+            return directories;
+        }
+
+        /**
+         * @return MP3 files whose name does not match the MP3 pattern
+         */
+        List<AlbumSnapshot.Entry> getInvalidMp3Files() {
+            return invalidMp3Files;
+        }
+
+        /**
+         * @return Descriptions of the extra rules broken by the album
+         */
+        List<String> getViolations() {
+            return violations;
+        }
+    }
+
+    /**
+     * Extra rule given in the properties file.
+     */
+    private static final class Rule {
+
+        /**
+         * Rule name.
+         */
+        private final String name;
+
+        /**
+         * Target of the rule: mp3, file or album.
+         */
+        private final String target;
+
+        /**
+         * Pattern the target name must match.
+         */
+        private final Pattern pattern;
+
+        /**
+         * Rule constructor.
+         *
+         * @param name    Rule name
+         * @param target  Target of the rule
+         * @param pattern Pattern the target name must match
+         */
+        private Rule(final String name, final String target,
+                     final Pattern pattern) {
+            this.name = name;
+            this.target = target;
+            this.pattern = pattern;
+        }
+
+        /**
+         * @param value Name to check
+         * @return true if the name matches the rule, false otherwise
+         */
+        private boolean matches(final String value) {
+            return pattern.matcher(value).matches();
+        }
+
+        /**
+         * @param value Name breaking the rule
+         * @return Description of the violation
+         */
+        private String describe(final String value) {
+            return value + " does not match rule " + name;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.alkisum.java.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index of the album directories processed in the previous runs, written next
+ * to the properties file. For each album directory, the index stores a hash
+ * of its file listing (names, sizes and last modified times), a hash of the
+ * configuration used to process it and the outcome of the process. An album
+ * processed without any issue is skipped as long as its listing and the
+ * configuration do not change. The index is saved periodically during the
+ * run and when the program is stopped, so an interrupted run keeps the
+ * outcomes recorded so far.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class ScanIndex {
+
+    /**
+     * Index file name.
+     */
+    private static final String INDEX_FILE_NAME = "discocleaner.index";
+
+    /**
+     * Outcome of an album processed without any issue nor change.
+     */
+    private static final String CLEAN = "clean";
+
+    /**
+     * Outcome of an album processed with issues or changes.
+     */
+    private static final String DIRTY = "dirty";
+
+    /**
+     * Minimum time between two saves of the index during the run.
+     */
+    private static final long SAVE_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * Lock held while the index is written, so the album workers only wait
+     * for the class lock while the outcomes are recorded.
+     */
+    private static final Object WRITE_LOCK = new Object();
+
+    /**
+     * Index records mapped by album directory path.
+     */
+    private static final Map<String, Record> RECORDS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Hash of the configuration, null if the index is not loaded.
+     */
+    private static String configHash;
+
+    /**
+     * Flag set to true if records changed since the last save, false
+     * otherwise.
+     */
+    private static boolean changed;
+
+    /**
+     * Time of the last save in nanoseconds.
+     */
+    private static long lastSave;
+
+    /**
+     * Flag set to true once the shutdown hook saving the index is
+     * registered.
+     */
+    private static boolean hooked;
+
+    /**
+     * ScanIndex constructor.
+     */
+    private ScanIndex() {
+
+    }
+
+    /**
+     * @return Index file, one per shard
+     */
+    private static File getIndexFile() {
+        return new File(Shard.getFileName(INDEX_FILE_NAME));
+    }
+
+    /**
+     * Load the index file if the index is enabled in the configuration.
+     */
+    static void load() {
+        if (!Config.isIndexEnabled() || Config.isPrintAudioQualityEnabled()) {
+            // the audio quality has to be printed for every album
+            return;
+        }
+        configHash = hashConfig();
+        RECORDS.clear();
+        synchronized (ScanIndex.class) {
+            changed = false;
+            lastSave = System.nanoTime();
+            if (!hooked) {
+                // save the outcomes recorded so far when the program is
+                // stopped
+                Runtime.getRuntime().addShutdownHook(new Thread(
+                        ScanIndex::save, "index-save"));
+                hooked = true;
+            }
+        }
+
+        File indexFile = getIndexFile();
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(
+                indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // outcome, config hash, listing hash and path
+                String[] fields = line.split("\t", 4);
+                if (fields.length == 4) {
+                    RECORDS.put(fields[3],
+                            new Record(fields[0], fields[1], fields[2]));
+                }
+            }
+        } catch (IOException e) {
+            // the index is rebuilt during the run
+            Terminal.printError("Cannot read " + indexFile.getName(), 0);
+            e.printStackTrace();
+            RECORDS.clear();
+        }
+    }
+
+    /**
+     * Write the index file if records changed since the last save. A
+     * temporary file is written, forced to the disk and then moved to the
+     * index file, so an interrupted run does not leave a truncated index.
+     */
+    static void save() {
+        // nothing is changed in plan mode
+        if (configHash == null || Plan.isEnabled()) {
+            return;
+        }
+        synchronized (WRITE_LOCK) {
+            synchronized (ScanIndex.class) {
+                if (!changed) {
+                    return;
+                }
+                changed = false;
+                lastSave = System.nanoTime();
+            }
+            File indexFile = getIndexFile();
+            File tmpFile = new File(indexFile.getPath() + "_tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(tmpFile.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    BufferedWriter writer = new BufferedWriter(
+                            Channels.newWriter(channel,
+                                    StandardCharsets.UTF_8.newEncoder(), -1));
+                    for (Map.Entry<String, Record> entry
+                            : RECORDS.entrySet()) {
+                        Record record = entry.getValue();
+                        writer.write(record.outcome + "\t"
+                                + record.configHash + "\t"
+                                + record.listingHash + "\t"
+                                + entry.getKey());
+                        writer.newLine();
+                    }
+                    writer.flush();
+                    channel.force(false);
+                }
+                try {
+                    Files.move(tmpFile.toPath(), indexFile.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmpFile.toPath(), indexFile.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                Terminal.printError("Cannot write " + indexFile.getName(), 0);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Record that the index changed and save it if the last save is older
+     * than {@link #SAVE_INTERVAL}.
+     */
+    private static void recordChange() {
+        boolean due;
+        synchronized (ScanIndex.class) {
+            changed = true;
+            due = System.nanoTime() - lastSave >= SAVE_INTERVAL;
+        }
+        if (due) {
+            save();
+        }
+    }
+
+    /**
+     * Check if the given album has been processed without any issue in a
+     * previous run and has not changed since then.
+     *
+     * @param album Album to check
+     * @return true if the album can be skipped, false otherwise
+     */
+    static boolean isUnchanged(final AlbumSnapshot album) {
+        if (configHash == null) {
+            return false;
+        }
+        Record record = RECORDS.get(album.getDirectory().getAbsolutePath());
+        return record != null
+                && record.outcome.equals(CLEAN)
+                && record.configHash.equals(configHash)
+                && record.listingHash.equals(hashListing(album));
+    }
+
+    /**
+     * Record the outcome of the given album. The album is clean if no error,
+     * warning nor question has been printed while processing it and if its
+     * listing has not changed.
+     *
+     * @param album     Album snapshot taken before processing the album
+     * @param directory Album directory after processing the album
+     */
+    static void update(final AlbumSnapshot album, final File directory) {
+        // the actions are not executed in plan mode
+        if (configHash == null || Plan.isEnabled()) {
+            return;
+        }
+        String path = album.getDirectory().getAbsolutePath();
+        String listingHash = hashListing(album);
+
+        // the album directory has been renamed
+        if (!directory.equals(album.getDirectory())) {
+            RECORDS.remove(path);
+            recordChange();
+            return;
+        }
+
+        String outcome = DIRTY;
+        if (!Terminal.hasIssues()) {
+            try {
+                // list the album again to detect the changes
+                if (listingHash.equals(hashListing(
+                        AlbumSnapshot.list(directory)))) {
+                    outcome = CLEAN;
+                }
+            } catch (IOException e) {
+                // cannot list the album: keep it dirty
+                outcome = DIRTY;
+            }
+        }
+        RECORDS.put(path, new Record(outcome, configHash, listingHash));
+        recordChange();
+    }
+
+    /**
+     * Hash the configuration settings used to process the albums, also used
+     * to check that a checkpoint has been written with the same settings.
+     *
+     * @return Configuration hash
+     */
+    static String hashConfig() {
+        StringBuilder settings = new StringBuilder();
+        settings.append(Config.getMp3Pattern()).append('\n');
+        settings.append(Config.getAlbumPattern()).append('\n');
+        settings.append(Config.getAlbumMask()).append('\n');
+        settings.append(Arrays.toString(Config.getTagFrames())).append('\n');
+        settings.append(Config.isCustomTagAllowed()).append('\n');
+        settings.append(Config.getCoverFileName()).append('\n');
+        settings.append(Arrays.toString(Config.getObsoleteCoverFileName()))
+                .append('\n');
+        settings.append(Config.isProcessCoverEnabled()).append('\n');
+        settings.append(Arrays.toString(Config.getAllowedExtensions()))
+                .append('\n');
+        settings.append(Config.getRules()).append('\n');
+        return hash(settings.toString());
+    }
+
+    /**
+     * Hash the listing of the given album: names, types, sizes and last
+     * modified times of its files.
+     *
+     * @param album Album to hash
+     * @return Listing hash
+     */
+    private static String hashListing(final AlbumSnapshot album) {
+        StringBuilder listing = new StringBuilder();
+        for (AlbumSnapshot.Entry entry : album.getEntries()) {
+            listing.append(entry.getName()).append('\t');
+            listing.append(entry.isDirectory()).append('\t');
+            listing.append(entry.getSize()).append('\t');
+            listing.append(entry.getLastModified()).append('\n');
+        }
+        return hash(listing.toString());
+    }
+
+    /**
+     * Hash the given string with SHA-1.
+     *
+     * @param value String to hash
+     * @return Hexadecimal hash
+     */
+    private static String hash(final String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+                    value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Index record of an album directory.
+     */
+    private static final class Record {
+
+        /**
+         * Outcome of the last process.
+         */
+        private final String outcome;
+
+        /**
+         * Hash of the configuration used for the last process.
+         */
+        private final String configHash;
+
+        /**
+         * Hash of the album listing before the last process.
+         */
+        private final String listingHash;
+
+        /**
+         * Record constructor.
+         *
+         * @param outcome     Outcome of the last process
+         * @param configHash  Hash of the configuration
+         * @param listingHash Hash of the album listing
+         */
+        private Record(final String outcome, final String configHash,
+                       final String listingHash) {
+            this.outcome = outcome;
+            this.configHash = configHash;
+            this.listingHash = listingHash;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.alkisum.java.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Artists and albums selected with the --artist, --album and --paths-from
+ * arguments. Each selected name is either a directory name, resolved directly
+ * under its parent directory, or a glob pattern matched against the names
+ * listed in its parent directory.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class Selection {
+
+    /**
+     * Characters making a name a glob pattern.
+     */
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /**
+     * Selected artists and albums, in the order they are processed.
+     */
+    private final List<Target> targets;
+
+    /**
+     * Selection constructor.
+     *
+     * @param targets Selected artists and albums
+     */
+    private Selection(final List<Target> targets) {
+        this.targets = Collections.unmodifiableList(targets);
+    }
+
+    /**
+     * Create the selection from the arguments. The --artist and --album
+     * values are combined, an album without artist is looked for in every
+     * artist directory. The lines of the --paths-from file are added after
+     * them.
+     *
+     * @param root Music directory
+     * @return Selection, empty if nothing is selected
+     * @throws IOException The --paths-from file cannot be read
+     */
+    static Selection create(final File root) throws IOException {
+        List<Target> targets = new ArrayList<>();
+        List<String> artists = Config.getArtists();
+        if (artists.isEmpty() && !Config.getAlbums().isEmpty()) {
+            artists = Collections.singletonList("*");
+        }
+        for (String artist : artists) {
+            if (Config.getAlbums().isEmpty()) {
+                targets.add(new Target(artist, null));
+            }
+            for (String album : Config.getAlbums()) {
+                targets.add(new Target(artist, album));
+            }
+        }
+
+        if (Config.getPathsFrom() != null) {
+            Path rootPath = root.toPath().toAbsolutePath().normalize();
+            for (String line : Files.readAllLines(
+                    Paths.get(Config.getPathsFrom()),
+                    StandardCharsets.UTF_8)) {
+                // skip blank lines and comments
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+
+                // paths are relative to the music directory or absolute
+                // paths inside it
+                Path path = Paths.get(trimmed).normalize();
+                if (path.isAbsolute()) {
+                    if (!path.startsWith(rootPath)) {
+                        Terminal.printWarning(trimmed
+                                + " is not in the music directory", 0);
+                        continue;
+                    }
+                    path = rootPath.relativize(path);
+                }
+                if (path.getNameCount() == 1
+                        && !path.toString().isEmpty()) {
+                    targets.add(new Target(path.toString(), null));
+                } else if (path.getNameCount() == 2) {
+                    targets.add(new Target(path.getName(0).toString(),
+                            path.getName(1).toString()));
+                } else {
+                    Terminal.printWarning(trimmed + " is not an artist or "
+                            + "an album directory", 0);
+                }
+            }
+        }
+        return new Selection(targets);
+    }
+
+    /**
+     * @return true if nothing is selected, the whole music directory is then
+     * processed, false otherwise
+     */
+    boolean isEmpty() {
+        return targets.isEmpty();
+    }
+
+    /**
+     * @return Selected artists and albums, in the order they are processed
+     */
+    List<Target> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @param name Selected name
+     * @return true if the name is a glob pattern, false otherwise
+     */
+    private static boolean isGlob(final String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(name.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compile the matcher of the given name. A name that is not a valid glob
+     * pattern (e.g. "Live [Disc 1") is taken literally.
+     *
+     * @param name Selected name
+     * @return Matcher of the file names, null if the name is not a glob
+     * pattern or not a valid one
+     */
+    private static PathMatcher getMatcher(final String name) {
+        if (!isGlob(name)) {
+            return null;
+        }
+        try {
+            return FileSystems.getDefault().getPathMatcher("glob:" + name);
+        } catch (PatternSyntaxException e) {
+            Terminal.printWarning(name + " is not a valid pattern, taken "
+                    + "literally", 0);
+            return null;
+        }
+    }
+
+    /**
+     * Artist and album selected. The matchers are only compiled when the
+     * names are not found as directory names.
+     */
+    static final class Target {
+
+        /**
+         * Artist directory name or glob pattern.
+         */
+        private final String artist;
+
+        /**
+         * Album directory name or glob pattern, null if every album of the
+         * artist is selected.
+         */
+        private final String album;
+
+        /**
+         * Matcher of the artist directory names, null if the artist is a
+         * directory name or if the matcher has not been compiled yet.
+         */
+        private PathMatcher artistMatcher;
+
+        /**
+         * Matcher of the album directory names, null if the album is a
+         * directory name, if every album is selected or if the matcher has
+         * not been compiled yet.
+         */
+        private PathMatcher albumMatcher;
+
+        /**
+         * Flag set to true once the artist matcher has been compiled, false
+         * otherwise.
+         */
+        private boolean artistCompiled;
+
+        /**
+         * Flag set to true once the album matcher has been compiled, false
+         * otherwise.
+         */
+        private boolean albumCompiled;
+
+        /**
+         * Target constructor.
+         *
+         * @param artist Artist directory name or glob pattern
+         * @param album  Album directory name or glob pattern, null for every
+         *               album
+         */
+        private Target(final String artist, final String album) {
+            this.artist = artist;
+            this.album = album;
+        }
+
+        /**
+         * @return Artist directory name or glob pattern
+         */
+        String getArtist() {
+            return artist;
+        }
+
+        /**
+         * @return Album directory name or glob pattern, null if every album of
+         * the artist is selected
+         */
+        String getAlbum() {
+            return album;
+        }
+
+        /**
+         * @return Matcher of the artist directory names, null if the artist is
+         * a directory name or not a valid pattern
+         */
+        PathMatcher getArtistMatcher() {
+            if (!artistCompiled) {
+                artistMatcher = getMatcher(artist);
+                artistCompiled = true;
+            }
+            return artistMatcher;
+        }
+
+        /**
+         * @return Matcher of the album directory names, null if the album is a
+         * directory name or not a valid pattern, or if every album is selected
+         */
+        PathMatcher getAlbumMatcher() {
+            if (!albumCompiled && album != null) {
+                albumMatcher = getMatcher(album);
+                albumCompiled = true;
+            }
+            return albumMatcher;
+        }
+    }
+}
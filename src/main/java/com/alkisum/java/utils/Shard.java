@@ -0,0 +1,441 @@
+package com.alkisum.java.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utility class splitting the music directory between several processes,
+ * possibly running on several machines mounting the same music directory.
+ * The artist directories are assigned to the shards by a stable hash of their
+ * name, and every album is locked with a lock file before being processed so
+ * an album is never processed twice by overlapping or restarted processes.
+ * Each shard writes its own log, index, checkpoint and metrics files.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class Shard {
+
+    /**
+     * Name of the lock directory created in the music directory when no lock
+     * directory is specified in configuration.
+     */
+    private static final String LOCK_DIRECTORY_NAME = ".discocleaner-locks";
+
+    /**
+     * Extension of the lock files.
+     */
+    private static final String LOCK_EXTENSION = ".lock";
+
+    /**
+     * State written in the lock file while the album is processed.
+     */
+    private static final String STATE_IN_PROGRESS = "in progress";
+
+    /**
+     * State written in the lock file once the album is processed.
+     */
+    private static final String STATE_DONE = "done";
+
+    /**
+     * Shard constructor.
+     */
+    private Shard() {
+
+    }
+
+    /**
+     * @return true if the music directory is split between several shards,
+     * false otherwise
+     */
+    static boolean isEnabled() {
+        return Config.getShardCount() > 1;
+    }
+
+    /**
+     * Check if the given artist directory is assigned to the current shard.
+     * The hash only depends on the artist name, normalized so the name
+     * written by any file system gives the same shard.
+     *
+     * @param artist Artist directory name
+     * @return true if the artist is processed by the current shard, false
+     * otherwise
+     */
+    static boolean contains(final String artist) {
+        if (!isEnabled()) {
+            return true;
+        }
+        byte[] hash = sha1(Normalizer.normalize(artist,
+                Normalizer.Form.NFC));
+        return Long.remainderUnsigned(ByteBuffer.wrap(hash).getLong(),
+                Config.getShardCount()) == Config.getShardIndex() - 1;
+    }
+
+    /**
+     * Get the name of the file written by the current shard, the shard is
+     * inserted before the extension (e.g. discocleaner.shard-1-of-4.log).
+     *
+     * @param fileName Name of the file written without shards
+     * @return Name of the file written by the current shard
+     */
+    static String getFileName(final String fileName) {
+        if (!isEnabled()) {
+            return fileName;
+        }
+        String shard = "shard-" + Config.getShardIndex() + "-of-"
+                + Config.getShardCount();
+        int separator = fileName.lastIndexOf(File.separatorChar);
+        int extension = fileName.lastIndexOf('.');
+        if (extension <= separator + 1) {
+            return fileName + "." + shard;
+        }
+        return fileName.substring(0, extension) + "." + shard
+                + fileName.substring(extension);
+    }
+
+    /**
+     * @return Directory containing the album lock files
+     */
+    private static Path getLockDirectory() {
+        if (Config.getLockDirectory() != null) {
+            return Paths.get(Config.getLockDirectory());
+        }
+        return Paths.get(Config.getPath(), LOCK_DIRECTORY_NAME);
+    }
+
+    /**
+     * @param path Entry of the music directory
+     * @return true if the entry is the lock directory, skipped when walking
+     * the music directory, false otherwise
+     */
+    static boolean isLockDirectory(final Path path) {
+        Path lockDirectory = getLockDirectory();
+        if (path.getFileName() == null || !path.getFileName().equals(
+                lockDirectory.getFileName())) {
+            return false;
+        }
+        return path.toAbsolutePath().normalize().equals(
+                lockDirectory.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Create the lock directory if the albums have to be locked.
+     *
+     * @throws IOException The lock directory cannot be created
+     */
+    static void start() throws IOException {
+        if (isEnabled() && !Plan.isEnabled()) {
+            Files.createDirectories(getLockDirectory());
+        }
+    }
+
+    /**
+     * Lock the given album directory. The lock file is named after the path
+     * of the album relative to the music directory, so the shards mounting
+     * the music directory at different places share the same locks. The lock
+     * files are kept after the album is processed, an album locked by a
+     * previous run is skipped until its lock is older than the lock maximum
+     * age. An album left in progress by an interrupted process of the current
+     * shard is taken back right away.
+     *
+     * @param album Album directory
+     * @return ACQUIRED if the album is locked by the current shard or if the
+     * albums do not have to be locked, IN_PROGRESS or DONE if the album is
+     * locked by another shard or by a previous run
+     * @throws IOException The lock file cannot be created
+     */
+    static Lock lock(final File album) throws IOException {
+        // nothing is changed in plan mode
+        if (!isEnabled() || Plan.isEnabled()) {
+            return Lock.ACQUIRED;
+        }
+        Path lockFile = getLockDirectory().resolve(getLockName(album));
+        try {
+            create(lockFile, album);
+            return Lock.ACQUIRED;
+        } catch (FileAlreadyExistsException e) {
+            // take over the lock left by a previous run
+            return takeOver(lockFile, album);
+        }
+    }
+
+    /**
+     * Release the lock of the given album directory, locked by the current
+     * shard. The lock of a processed album is kept and marked as done, the
+     * lock of an album not processed is deleted so the album is processed by
+     * the next run.
+     *
+     * @param album Album directory
+     * @param done  true if the album has been processed, false otherwise
+     * @throws IOException The lock file cannot be written or deleted
+     */
+    static void release(final File album, final boolean done)
+            throws IOException {
+        if (!isEnabled() || Plan.isEnabled()) {
+            return;
+        }
+        Path lockFile = getLockDirectory().resolve(getLockName(album));
+        if (!done) {
+            Files.deleteIfExists(lockFile);
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(lockFile,
+                StandardCharsets.UTF_8, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writer.write(getContent(album, STATE_DONE));
+        } catch (NoSuchFileException e) {
+            // taken over by another shard
+        }
+    }
+
+    /**
+     * Take over the given lock file if it has expired or if it has been left
+     * in progress by an interrupted process of the current shard. The lock
+     * is moved to a name of the current process first, only one shard can
+     * move it, then the new lock is created. A lock renewed by another shard
+     * in between is put back.
+     *
+     * @param lockFile Existing lock file
+     * @param album    Album directory
+     * @return ACQUIRED if the album is locked by the current shard,
+     * IN_PROGRESS or DONE if the album is locked by another shard
+     * @throws IOException The lock file cannot be read or created
+     */
+    private static Lock takeOver(final Path lockFile, final File album)
+            throws IOException {
+        byte[] previous;
+        try {
+            previous = Files.readAllBytes(lockFile);
+        } catch (NoSuchFileException e) {
+            // released in between
+            previous = null;
+        }
+        if (previous != null) {
+            String[] lines = new String(previous, StandardCharsets.UTF_8)
+                    .split("\n");
+            Lock state = Lock.IN_PROGRESS;
+            if (lines.length > 2 && lines[2].equals(STATE_DONE)) {
+                state = Lock.DONE;
+            }
+            if (!isExpired(lockFile) && (state == Lock.DONE
+                    || lines.length < 2 || !isInterrupted(lines[1]))) {
+                return state;
+            }
+
+            // claim the previous lock, only one shard can move it
+            Path claimed = lockFile.resolveSibling(lockFile.getFileName()
+                    + "." + getProcessName() + "-"
+                    + Thread.currentThread().getId());
+            try {
+                Files.move(lockFile, claimed, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                // claimed by another shard
+                return Lock.IN_PROGRESS;
+            }
+
+            // put back a lock renewed by another shard in between, the link
+            // is not created if a lock has been created since
+            if (!Arrays.equals(previous, Files.readAllBytes(claimed))) {
+                try {
+                    Files.createLink(lockFile, claimed);
+                } catch (FileAlreadyExistsException e) {
+                    // locked again by another shard
+                }
+                Files.delete(claimed);
+                return Lock.IN_PROGRESS;
+            }
+            Files.delete(claimed);
+        }
+        try {
+            create(lockFile, album);
+            return Lock.ACQUIRED;
+        } catch (FileAlreadyExistsException e) {
+            // locked by another shard in between
+            return Lock.IN_PROGRESS;
+        }
+    }
+
+    /**
+     * Create the given lock file, the shard holding the lock is written in
+     * it.
+     *
+     * @param lockFile Lock file
+     * @param album    Album directory
+     * @throws IOException The lock file cannot be created
+     */
+    private static void create(final Path lockFile, final File album)
+            throws IOException {
+        try (Writer writer = Files.newBufferedWriter(lockFile,
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            writer.write(getContent(album, STATE_IN_PROGRESS));
+        }
+    }
+
+    /**
+     * @param album Album directory
+     * @param state State of the album
+     * @return Content of the lock file: the album path, the shard and process
+     * holding the lock and the state of the album
+     */
+    private static String getContent(final File album, final String state) {
+        return getRelativePath(album) + "\n"
+                + getShard() + " " + getProcessName() + " " + Instant.now()
+                + "\n" + state + "\n";
+    }
+
+    /**
+     * Check if the given lock holder is an interrupted process of the current
+     * shard. A process running on another machine is considered interrupted,
+     * the same shard is not supposed to run twice at the same time.
+     *
+     * @param holder Shard and process written in the lock file
+     * @return true if the lock holder is the current shard and its process
+     * is not running anymore, false otherwise
+     */
+    private static boolean isInterrupted(final String holder) {
+        // <index>/<count> <pid>@<host name> <time>
+        String[] fields = holder.split(" ");
+        if (fields.length < 2 || !fields[0].equals(getShard())) {
+            return false;
+        }
+        String[] process = fields[1].split("@", 2);
+        String[] current = getProcessName().split("@", 2);
+        if (process.length < 2 || current.length < 2
+                || !process[1].equals(current[1])) {
+            return true;
+        }
+        try {
+            return !ProcessHandle.of(Long.parseLong(process[0]))
+                    .map(ProcessHandle::isAlive).orElse(false);
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @param lockFile Existing lock file
+     * @return true if the lock file is older than the lock maximum age,
+     * false otherwise
+     * @throws IOException The lock file cannot be read
+     */
+    private static boolean isExpired(final Path lockFile) throws IOException {
+        if (Config.getLockMaxAge() <= 0) {
+            return false;
+        }
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(lockFile).toMillis();
+        } catch (NoSuchFileException e) {
+            // deleted in between
+            return true;
+        }
+        return System.currentTimeMillis() - modified
+                > TimeUnit.HOURS.toMillis(Config.getLockMaxAge());
+    }
+
+    /**
+     * @param album Album directory
+     * @return Name of the lock file of the album
+     */
+    private static String getLockName(final File album) {
+        byte[] hash = sha1(getRelativePath(album));
+        StringBuilder name = new StringBuilder(hash.length * 2
+                + LOCK_EXTENSION.length());
+        for (byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+        return name.append(LOCK_EXTENSION).toString();
+    }
+
+    /**
+     * Hash the given text, the hash is the same on every platform.
+     *
+     * @param text Text to hash
+     * @return SHA-1 hash of the UTF-8 text
+     */
+    private static byte[] sha1(final String text) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(
+                    text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param album Album directory
+     * @return Path of the album relative to the music directory, with '/' as
+     * separator and normalized names
+     */
+    private static String getRelativePath(final File album) {
+        Path root = Paths.get(Config.getPath()).toAbsolutePath().normalize();
+        Path path = album.toPath().toAbsolutePath().normalize();
+        if (path.startsWith(root)) {
+            path = root.relativize(path);
+        }
+        StringBuilder relative = new StringBuilder();
+        for (Path name : path) {
+            if (relative.length() > 0) {
+                relative.append('/');
+            }
+            relative.append(name.toString());
+        }
+        return Normalizer.normalize(relative, Normalizer.Form.NFC);
+    }
+
+    /**
+     * @return Current shard, written in the lock files
+     */
+    private static String getShard() {
+        return Config.getShardIndex() + "/" + Config.getShardCount();
+    }
+
+    /**
+     * @return Process holding the locks, written in the lock files
+     */
+    private static String getProcessName() {
+        // <pid>@<host name>
+        return ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    /**
+     * Outcome of locking an album.
+     */
+    enum Lock {
+
+        /**
+         * The album is locked by the current shard and can be processed.
+         */
+        ACQUIRED,
+
+        /**
+         * The album is being processed by another shard.
+         */
+        IN_PROGRESS,
+
+        /**
+         * The album has been processed by another shard or by a previous run.
+         */
+        DONE
+    }
+}
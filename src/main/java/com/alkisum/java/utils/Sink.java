@@ -0,0 +1,365 @@
+package com.alkisum.java.utils;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Destination of the messages printed on the console. The messages are
+ * written to a buffer flushed in batches: when the buffer is full, when a
+ * question is asked, when an error is printed (so the stack trace follows it)
+ * and periodically by a background thread, so the messages never wait long in
+ * the buffer during a quiet stage. In quiet mode, only the errors,
+ * warnings and questions are printed, preceded by the artist and album lines
+ * they belong to.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+abstract class Sink {
+
+    /**
+     * Size of the buffer of the standard output.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum time in milliseconds the printed messages can wait in the
+     * buffer.
+     */
+    private static final long FLUSH_INTERVAL = 200L;
+
+    /**
+     * Buffered standard output.
+     */
+    private final Writer out = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(FileDescriptor.out),
+            Charset.defaultCharset()), BUFFER_SIZE);
+
+    /**
+     * Flag set to true if only the problems are printed, false otherwise.
+     */
+    private final boolean quiet;
+
+    /**
+     * Last information line printed at each indent, the artist and album
+     * lines the next messages belong to.
+     */
+    private final List<String> headers = new ArrayList<>();
+
+    /**
+     * Number of headers already written, the other ones are written before
+     * the next problem in quiet mode.
+     */
+    private int writtenHeaders;
+
+    /**
+     * Flag set to true if messages are waiting in the buffer, false
+     * otherwise.
+     */
+    private boolean pending;
+
+    /**
+     * Sink constructor.
+     *
+     * @param quiet true if only the problems are printed
+     */
+    Sink(final boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Create the sink specified in the arguments. The colours are only used
+     * when the console is a terminal and the NO_COLOR environment variable
+     * is not set.
+     *
+     * @return Sink
+     */
+    static Sink create() {
+        Sink sink;
+        if (Config.getOutputFormat().equals("ndjson")) {
+            sink = new JsonSink(Config.isQuiet());
+        } else {
+            sink = new TextSink(Config.isQuiet(), System.console() != null
+                    && System.getenv("NO_COLOR") == null);
+        }
+
+        // write the buffered messages periodically, even when nothing is
+        // printed for a while
+        ScheduledExecutorService flusher =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "sink-flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        flusher.scheduleWithFixedDelay(sink::flushPending, FLUSH_INTERVAL,
+                FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+
+        // write the buffered messages when the program is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(sink::flush,
+                "sink-flush"));
+        return sink;
+    }
+
+    /**
+     * Print the given message.
+     *
+     * @param level   Level of the message
+     * @param indent  Number of indent to use when printing message
+     * @param message Message to print
+     */
+    final synchronized void print(final Level level, final int indent,
+                                  final String message) {
+        if (level == Level.INFO) {
+            // remember the line the next messages belong to
+            while (headers.size() > indent) {
+                headers.remove(headers.size() - 1);
+            }
+            while (headers.size() < indent) {
+                headers.add(null);
+            }
+            headers.add(message);
+            writtenHeaders = Math.min(writtenHeaders, indent);
+        }
+        if (quiet) {
+            if (!level.isProblem()) {
+                return;
+            }
+
+            // print the lines the problem belongs to
+            int count = Math.min(indent, headers.size());
+            for (int i = writtenHeaders; i < count; i++) {
+                if (headers.get(i) != null) {
+                    write(Level.INFO, i, headers.get(i));
+                }
+            }
+            writtenHeaders = Math.max(writtenHeaders, count);
+        } else if (level == Level.INFO) {
+            writtenHeaders = headers.size();
+        }
+        write(level, indent, message);
+
+        // print the questions and errors right away, the others in batches
+        if (level == Level.QUESTION || level == Level.ERROR) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the buffered messages to the standard output.
+     */
+    final synchronized void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // nothing to do if the standard output is closed
+        }
+        pending = false;
+    }
+
+    /**
+     * Write the buffered messages to the standard output if any.
+     */
+    private synchronized void flushPending() {
+        if (pending) {
+            flush();
+        }
+    }
+
+    /**
+     * @param indent Indent of the message
+     * @return Headers the message at the given indent belongs to
+     */
+    final List<String> getContext(final int indent) {
+        List<String> context = new ArrayList<>();
+        for (int i = 0; i < Math.min(indent, headers.size()); i++) {
+            if (headers.get(i) != null) {
+                context.add(headers.get(i));
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Write the given line to the buffer.
+     *
+     * @param line Line to write
+     */
+    final void writeLine(final String line) {
+        try {
+            out.write(line);
+            out.write(System.lineSeparator());
+            pending = true;
+        } catch (IOException e) {
+            // nothing to do if the standard output is closed
+        }
+    }
+
+    /**
+     * Write the given message to the buffer.
+     *
+     * @param level   Level of the message
+     * @param indent  Number of indent to use when printing message
+     * @param message Message to print
+     */
+    abstract void write(Level level, int indent, String message);
+
+    /**
+     * Indent the message according to the given indent number.
+     *
+     * @param message Message to indent
+     * @param indent  Number of indent to use
+     * @return Indented message
+     */
+    static String indent(final String message, final int indent) {
+        StringBuilder messageBuilder = new StringBuilder();
+        for (int i = 0; i < indent; i++) {
+            messageBuilder.append("\t");
+        }
+        messageBuilder.append(message);
+        return messageBuilder.toString();
+    }
+
+    /**
+     * Levels of the messages.
+     */
+    enum Level {
+
+        /**
+         * Error, printed in red.
+         */
+        ERROR("error", "\u001B[31m"),
+
+        /**
+         * Warning, printed in yellow.
+         */
+        WARNING("warning", "\u001B[33m"),
+
+        /**
+         * Information, printed without colour.
+         */
+        INFO("info", null),
+
+        /**
+         * Question, printed in blue.
+         */
+        QUESTION("question", "\u001B[34m"),
+
+        /**
+         * Confirmation, printed in green.
+         */
+        CONFIRMATION("confirmation", "\u001B[32m");
+
+        /**
+         * Level name written in the JSON messages.
+         */
+        private final String label;
+
+        /**
+         * Code of the colour of the level, null for none.
+         */
+        private final String colour;
+
+        /**
+         * Level constructor.
+         *
+         * @param label  Level name written in the JSON messages
+         * @param colour Code of the colour of the level, null for none
+         */
+        Level(final String label, final String colour) {
+            this.label = label;
+            this.colour = colour;
+        }
+
+        /**
+         * @return true if the messages of the level are printed in quiet
+         * mode, false otherwise
+         */
+        boolean isProblem() {
+            return this == ERROR || this == WARNING || this == QUESTION;
+        }
+    }
+
+    /**
+     * Sink printing the messages as indented text, coloured if the console
+     * supports it.
+     */
+    private static final class TextSink extends Sink {
+
+        /**
+         * Code to reset format.
+         */
+        private static final String ANSI_RESET = "\u001B[0m";
+
+        /**
+         * Flag set to true if the messages are coloured, false otherwise.
+         */
+        private final boolean coloured;
+
+        /**
+         * TextSink constructor.
+         *
+         * @param quiet    true if only the problems are printed
+         * @param coloured true if the messages are coloured
+         */
+        private TextSink(final boolean quiet, final boolean coloured) {
+            super(quiet);
+            this.coloured = coloured;
+        }
+
+        @Override
+        void write(final Level level, final int indent,
+                   final String message) {
+            String output = indent(message, indent);
+            if (coloured && level.colour != null) {
+                output = level.colour + output + ANSI_RESET;
+            }
+            writeLine(output);
+        }
+    }
+
+    /**
+     * Sink printing one JSON object per message (NDJSON), with the level, the
+     * indent, the artist and album lines the message belongs to and the
+     * message.
+     */
+    private static final class JsonSink extends Sink {
+
+        /**
+         * JsonSink constructor.
+         *
+         * @param quiet true if only the problems are printed
+         */
+        private JsonSink(final boolean quiet) {
+            super(quiet);
+        }
+
+        @Override
+        void write(final Level level, final int indent,
+                   final String message) {
+            StringBuilder json = new StringBuilder();
+            json.append("{\"level\":").append(Json.quote(level.label));
+            json.append(",\"indent\":").append(indent);
+            json.append(",\"context\":[");
+            List<String> context = getContext(indent);
+            for (int i = 0; i < context.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(Json.quote(context.get(i)));
+            }
+            json.append("],\"message\":").append(Json.quote(message));
+            writeLine(json.append('}').toString());
+        }
+    }
+}
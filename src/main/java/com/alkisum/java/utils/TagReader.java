@@ -0,0 +1,690 @@
+package com.alkisum.java.utils;
+
+import com.mpatric.mp3agic.AbstractID3v2Tag;
+import com.mpatric.mp3agic.ID3v1Genres;
+import com.mpatric.mp3agic.ID3v1Tag;
+import com.mpatric.mp3agic.ID3v2TagFactory;
+import com.mpatric.mp3agic.ID3v2TextFrameData;
+import com.mpatric.mp3agic.InvalidDataException;
+import com.mpatric.mp3agic.NoSuchTagException;
+import com.mpatric.mp3agic.UnsupportedTagException;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utility class reading the tags of a MP3 file without scanning its MPEG
+ * frames. Only the ID3v2 header, the frame headers and the text frames used by
+ * the program are read at the beginning of the file, and only the last bytes
+ * are read at the end of the file to detect the ID3v1 tag and the custom tags.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class TagReader {
+
+    /**
+     * Artist frame id.
+     */
+    static final String ARTIST = "TPE1";
+
+    /**
+     * Album frame id.
+     */
+    static final String ALBUM = "TALB";
+
+    /**
+     * Year frame id.
+     */
+    static final String YEAR = "TYER";
+
+    /**
+     * Genre frame id.
+     */
+    static final String GENRE = "TCON";
+
+    /**
+     * Disc number frame id.
+     */
+    static final String DISC = "TPOS";
+
+    /**
+     * Album artist frame id.
+     */
+    static final String ALBUM_ARTIST = "TPE2";
+
+    /**
+     * Track number frame id.
+     */
+    static final String TRACK = "TRCK";
+
+    /**
+     * Cover frame id.
+     */
+    static final String COVER = "APIC";
+
+    /**
+     * ID3v2.2 cover frame id.
+     */
+    static final String OBSOLETE_COVER = "PIC";
+
+    /**
+     * Text frames read by the program mapped by their ID3v2.2 frame id.
+     */
+    private static final Map<String, String> OBSOLETE_IDS;
+
+    static {
+        OBSOLETE_IDS = new HashMap<>();
+        OBSOLETE_IDS.put("TP1", ARTIST);
+        OBSOLETE_IDS.put("TAL", ALBUM);
+        OBSOLETE_IDS.put("TYE", YEAR);
+        OBSOLETE_IDS.put("TCO", GENRE);
+        OBSOLETE_IDS.put("TPA", DISC);
+        OBSOLETE_IDS.put("TP2", ALBUM_ARTIST);
+        OBSOLETE_IDS.put("TRK", TRACK);
+    }
+
+    /**
+     * Number of bytes read at once at the beginning of the file, enough to
+     * contain the headers of most tags.
+     */
+    private static final int HEAD_LENGTH = 4096;
+
+    /**
+     * Number of bytes read at once when reading the cover image.
+     */
+    private static final int CHUNK_LENGTH = 8192;
+
+    /**
+     * ID3v2 header length.
+     */
+    private static final int HEADER_LENGTH = 10;
+
+    /**
+     * ID3v1 tag length.
+     */
+    private static final int ID3V1_LENGTH = 128;
+
+    /**
+     * TagReader constructor.
+     */
+    private TagReader() {
+
+    }
+
+    /**
+     * Read the tags of the given MP3 file.
+     *
+     * @param file MP3 file to read
+     * @return Tags of the MP3 file
+     * @throws InvalidDataException    Invalid data
+     * @throws IOException             The file cannot be read
+     * @throws UnsupportedTagException Unsupported tag
+     */
+    static TrackTags read(final File file)
+            throws InvalidDataException, IOException, UnsupportedTagException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            // read the beginning of the file once
+            ByteBuffer head = ByteBuffer.allocate(
+                    (int) Math.min(HEAD_LENGTH, size));
+            readFully(channel, head, 0);
+            head.flip();
+
+            // read the end of the file once
+            byte[] tailBytes = TrailingTags.readTail(channel, size);
+
+            // read ID3v1 tag
+            Map<String, String> id3v1Texts = new HashMap<>();
+            boolean id3v1 = readId3v1Tag(tailBytes, id3v1Texts);
+
+            // detect custom tags, located right before the ID3v1 tag and its
+            // enhanced block
+            boolean customTag = TrailingTags.hasCustomTag(tailBytes, size);
+
+            // read ID3v2 tag
+            int id3v2Length = getId3v2Length(head);
+            Set<String> frameIds = new LinkedHashSet<>();
+            Map<String, String> id3v2Texts = new HashMap<>();
+            int[] coverFrame = {-1, 0};
+            if (id3v2Length > 0 && !readFrames(channel, head, frameIds,
+                    id3v2Texts, coverFrame)) {
+                // the frame headers cannot be read directly: parse the tag
+                readFramesFromTag(file, id3v2Length, frameIds, id3v2Texts);
+                coverFrame[0] = -1;
+            }
+
+            return new TrackTags(id3v1, id3v1Texts, id3v2Length > 0,
+                    id3v2Length, frameIds, id3v2Texts, coverFrame[0],
+                    coverFrame[1], customTag);
+        }
+    }
+
+    /**
+     * Read the ID3v2 tag of the given MP3 file by reading only the tag bytes,
+     * without scanning the MPEG frames.
+     *
+     * @param file MP3 file to read
+     * @return ID3v2 tag, null if the file does not have an ID3v2 tag
+     * @throws InvalidDataException    Invalid data
+     * @throws IOException             The file cannot be read
+     * @throws UnsupportedTagException Unsupported tag
+     */
+    static AbstractID3v2Tag readId3v2Tag(final File file)
+            throws InvalidDataException, IOException, UnsupportedTagException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(
+                    (int) Math.min(HEADER_LENGTH, channel.size()));
+            readFully(channel, header, 0);
+            header.flip();
+            int length = getId3v2Length(header);
+            if (length == 0) {
+                return null;
+            }
+            return readId3v2Tag(channel, length);
+        }
+    }
+
+    /**
+     * Compute the SHA-1 digest of the cover image contained in the given MP3
+     * file. The image is read in place by chunks when the cover frame has been
+     * located by {@link #read(File)}, the whole tag is parsed otherwise.
+     *
+     * @param file MP3 file to read
+     * @param tags Tags of the MP3 file
+     * @return Digest of the cover image, null if the file has no cover
+     * @throws InvalidDataException    Invalid data
+     * @throws IOException             The file cannot be read
+     * @throws UnsupportedTagException Unsupported tag
+     */
+    static byte[] digestCover(final File file, final TrackTags tags)
+            throws InvalidDataException, IOException, UnsupportedTagException {
+        if (!tags.hasCover()) {
+            return null;
+        }
+        if (tags.getCoverOffset() >= 0) {
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ)) {
+                byte[] digest = digestCoverFrame(channel,
+                        tags.getCoverOffset(), tags.getCoverLength(),
+                        tags.getFrameIds().contains(OBSOLETE_COVER));
+                if (digest != null) {
+                    return digest;
+                }
+            }
+        }
+
+        // the cover frame cannot be read in place: parse the tag
+        AbstractID3v2Tag tag = readId3v2Tag(file);
+        if (tag == null || tag.getAlbumImage() == null) {
+            return null;
+        }
+        MessageDigest digest = newDigest();
+        digest.update(tag.getAlbumImage());
+        return digest.digest();
+    }
+
+    /**
+     * Compute the SHA-1 digest of the image contained in the given cover frame
+     * data, skipping the encoding, the MIME type, the picture type and the
+     * description.
+     *
+     * @param channel  Channel of the MP3 file
+     * @param offset   Position of the cover frame data
+     * @param length   Length of the cover frame data
+     * @param obsolete true if the frame is an ID3v2.2 cover frame
+     * @return Digest of the image, null if the image start cannot be found in
+     * the first chunk
+     * @throws IOException The file cannot be read
+     */
+    private static byte[] digestCoverFrame(final FileChannel channel,
+                                           final long offset, final int length,
+                                           final boolean obsolete)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, CHUNK_LENGTH));
+        readFully(channel, buffer, offset);
+        buffer.flip();
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+
+        // skip encoding and MIME type (image format in ID3v2.2)
+        int encoding = buffer.get(0);
+        int position;
+        if (obsolete) {
+            position = 4;
+        } else {
+            position = indexOfTerminator(buffer, 1, 1);
+            if (position < 0) {
+                return null;
+            }
+            position++;
+        }
+
+        // skip picture type and description
+        position++;
+        int terminatorLength = encoding == 1 || encoding == 2 ? 2 : 1;
+        position = indexOfTerminator(buffer, position, terminatorLength);
+        if (position < 0) {
+            return null;
+        }
+        position += terminatorLength;
+
+        // digest the image by chunks
+        MessageDigest digest = newDigest();
+        buffer.position(position);
+        digest.update(buffer);
+        long current = offset + buffer.limit();
+        long end = offset + length;
+        while (current < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - current));
+            readFully(channel, buffer, current);
+            buffer.flip();
+            current += buffer.remaining();
+            digest.update(buffer);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Find the terminator of an encoded string, aligned on the terminator
+     * length as done by mp3agic.
+     *
+     * @param buffer           Buffer to search
+     * @param from             Index of the string
+     * @param terminatorLength Length of the terminator, 1 or 2
+     * @return Index of the terminator, -1 if not found
+     */
+    private static int indexOfTerminator(final ByteBuffer buffer,
+                                         final int from,
+                                         final int terminatorLength) {
+        for (int i = from; i <= buffer.limit() - terminatorLength;
+             i += terminatorLength) {
+            boolean terminator = true;
+            for (int j = 0; j < terminatorLength; j++) {
+                if (buffer.get(i + j) != 0) {
+                    terminator = false;
+                    break;
+                }
+            }
+            if (terminator) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return New SHA-1 digest
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the length of the ID3v2 tag starting at the beginning of the given
+     * buffer.
+     *
+     * @param head Buffer containing the beginning of the file
+     * @return Length of the ID3v2 tag including header, padding and footer,
+     * 0 if the file does not start with an ID3v2 tag
+     */
+    static int getId3v2Length(final ByteBuffer head) {
+        if (head.limit() < HEADER_LENGTH || head.get(0) != 'I'
+                || head.get(1) != 'D' || head.get(2) != '3') {
+            return 0;
+        }
+        int major = head.get(3);
+        if (major < 2 || major > 4) {
+            return 0;
+        }
+        for (int i = 6; i < HEADER_LENGTH; i++) {
+            if ((head.get(i) & 0x80) != 0) {
+                return 0;
+            }
+        }
+        int length = HEADER_LENGTH + unpackSynchsafe(head, 6);
+        if (major == 4 && (head.get(5) & 0x10) != 0) {
+            // footer
+            length += HEADER_LENGTH;
+        }
+        return length;
+    }
+
+    /**
+     * Read the ID3v2 tag from the given channel.
+     *
+     * @param channel Channel of the MP3 file
+     * @param length  Length of the ID3v2 tag
+     * @return ID3v2 tag
+     * @throws InvalidDataException    Invalid data
+     * @throws IOException             The file cannot be read
+     * @throws UnsupportedTagException Unsupported tag
+     */
+    private static AbstractID3v2Tag readId3v2Tag(final FileChannel channel,
+                                                 final int length)
+            throws InvalidDataException, IOException, UnsupportedTagException {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        readFully(channel, bytes, 0);
+        try {
+            return ID3v2TagFactory.createTag(bytes.array());
+        } catch (NoSuchTagException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the frame headers of the ID3v2 tag and the text frames used by the
+     * program.
+     *
+     * @param channel    Channel of the MP3 file
+     * @param head       Buffer containing the beginning of the file
+     * @param frameIds   Set to fill with the frame ids
+     * @param id3v2Texts Map to fill with the text frames
+     * @param coverFrame Array to fill with the position and the length of the
+     *                   first cover frame data, the position is left to -1 if
+     *                   the cover frame cannot be read in place
+     * @return true if the frames have been read, false if the tag uses
+     * features requiring to parse the whole tag (unsynchronisation,
+     * compression, encryption)
+     * @throws IOException The file cannot be read
+     */
+    private static boolean readFrames(final FileChannel channel,
+                                      final ByteBuffer head,
+                                      final Set<String> frameIds,
+                                      final Map<String, String> id3v2Texts,
+                                      final int[] coverFrame)
+            throws IOException {
+        int major = head.get(3);
+        int flags = head.get(5);
+        if (major < 4 && (flags & 0x80) != 0) {
+            // unsynchronised tag
+            return false;
+        }
+        int end = HEADER_LENGTH + unpackSynchsafe(head, 6);
+        int position = HEADER_LENGTH;
+
+        // skip extended header
+        if (major > 2 && (flags & 0x40) != 0) {
+            ByteBuffer extended = read(channel, head, position, 4);
+            if (major == 3) {
+                position += 4 + extended.getInt(0);
+            } else {
+                position += unpackSynchsafe(extended, 0);
+            }
+        }
+
+        int idLength = major == 2 ? 3 : 4;
+        int frameHeaderLength = major == 2 ? 6 : 10;
+        while (position + frameHeaderLength <= end) {
+            ByteBuffer header = read(channel, head, position,
+                    frameHeaderLength);
+
+            // padding reached
+            if (header.get(0) == 0) {
+                break;
+            }
+
+            String id = new String(header.array(), header.arrayOffset(),
+                    idLength, StandardCharsets.ISO_8859_1);
+            int dataLength;
+            boolean encoded = false;
+            if (major == 2) {
+                dataLength = ((header.get(3) & 0xff) << 16)
+                        | ((header.get(4) & 0xff) << 8)
+                        | (header.get(5) & 0xff);
+            } else if (major == 3) {
+                dataLength = header.getInt(4);
+                encoded = (header.get(9) & 0xc0) != 0;
+            } else {
+                dataLength = unpackSynchsafe(header, 4);
+                encoded = (header.get(9) & 0x0f) != 0;
+            }
+            if (dataLength < 0 || position + frameHeaderLength
+                    + dataLength > end) {
+                break;
+            }
+
+            // locate the first cover frame data, left unknown if encoded
+            if (id.equals(major == 2 ? OBSOLETE_COVER : COVER)
+                    && !frameIds.contains(id) && !encoded) {
+                coverFrame[0] = position + frameHeaderLength;
+                coverFrame[1] = dataLength;
+            }
+            frameIds.add(id);
+
+            // read text frames used by the program
+            String textId = major == 2 ? OBSOLETE_IDS.get(id) : id;
+            if (isReadText(textId) && !id3v2Texts.containsKey(textId)) {
+                if (encoded) {
+                    return false;
+                }
+                ByteBuffer data = read(channel, head,
+                        position + frameHeaderLength, dataLength);
+                id3v2Texts.put(textId, decodeText(data));
+            }
+
+            position += frameHeaderLength + dataLength;
+        }
+        return true;
+    }
+
+    /**
+     * Read the frame ids and the text frames used by the program by parsing
+     * the whole ID3v2 tag.
+     *
+     * @param file       MP3 file
+     * @param length     Length of the ID3v2 tag
+     * @param frameIds   Set to fill with the frame ids
+     * @param id3v2Texts Map to fill with the text frames
+     * @throws InvalidDataException    Invalid data
+     * @throws IOException             The file cannot be read
+     * @throws UnsupportedTagException Unsupported tag
+     */
+    private static void readFramesFromTag(final File file, final int length,
+                                          final Set<String> frameIds,
+                                          final Map<String, String> id3v2Texts)
+            throws InvalidDataException, IOException, UnsupportedTagException {
+        frameIds.clear();
+        id3v2Texts.clear();
+        AbstractID3v2Tag tag;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            tag = readId3v2Tag(channel, length);
+        }
+        if (tag == null) {
+            return;
+        }
+        frameIds.addAll(tag.getFrameSets().keySet());
+        putText(id3v2Texts, ARTIST, tag.getArtist());
+        putText(id3v2Texts, ALBUM, tag.getAlbum());
+        putText(id3v2Texts, YEAR, tag.getYear());
+        putText(id3v2Texts, GENRE, tag.getGenreDescription());
+        putText(id3v2Texts, DISC, tag.getPartOfSet());
+        putText(id3v2Texts, ALBUM_ARTIST, tag.getAlbumArtist());
+        putText(id3v2Texts, TRACK, tag.getTrack());
+    }
+
+    /**
+     * Read the ID3v1 tag located in the last 128 bytes of the given buffer.
+     *
+     * @param tail       End of the file
+     * @param id3v1Texts Map to fill with the text fields of the tag
+     * @return true if the file has an ID3v1 tag, false otherwise
+     */
+    private static boolean readId3v1Tag(final byte[] tail,
+                                        final Map<String, String> id3v1Texts) {
+        if (tail.length < ID3V1_LENGTH
+                || !startsWith(tail, tail.length - ID3V1_LENGTH, "TAG")) {
+            return false;
+        }
+        byte[] bytes = new byte[ID3V1_LENGTH];
+        System.arraycopy(tail, tail.length - ID3V1_LENGTH, bytes, 0,
+                ID3V1_LENGTH);
+        try {
+            ID3v1Tag tag = new ID3v1Tag(bytes);
+            putText(id3v1Texts, ARTIST, tag.getArtist());
+            putText(id3v1Texts, ALBUM, tag.getAlbum());
+            putText(id3v1Texts, YEAR, tag.getYear());
+            putText(id3v1Texts, TRACK, tag.getTrack());
+            if (tag.getGenre() >= 0
+                    && tag.getGenre() < ID3v1Genres.GENRES.length) {
+                putText(id3v1Texts, GENRE,
+                        ID3v1Genres.GENRES[tag.getGenre()]);
+            }
+            return true;
+        } catch (NoSuchTagException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check if the given text frame is read by the program.
+     *
+     * @param id Frame id, as used in ID3v2.3 tags
+     * @return true if the text frame is read, false otherwise
+     */
+    private static boolean isReadText(final String id) {
+        return id != null && OBSOLETE_IDS.containsValue(id);
+    }
+
+    /**
+     * Put the given text in the map if it is not null.
+     *
+     * @param texts Map of texts
+     * @param id    Frame id
+     * @param text  Text to put
+     */
+    private static void putText(final Map<String, String> texts,
+                                final String id, final String text) {
+        if (text != null) {
+            texts.put(id, text);
+        }
+    }
+
+    /**
+     * Decode the given text frame data.
+     *
+     * @param data Text frame data
+     * @return Decoded text, null if the frame data is invalid
+     */
+    private static String decodeText(final ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        try {
+            ID3v2TextFrameData frameData = new ID3v2TextFrameData(false,
+                    bytes);
+            if (frameData.getText() == null) {
+                return null;
+            }
+            return frameData.getText().toString();
+        } catch (InvalidDataException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read bytes from the given channel, served from the beginning of the
+     * file already read when possible.
+     *
+     * @param channel  Channel to read from
+     * @param head     Buffer containing the beginning of the file
+     * @param position Position to read from
+     * @param length   Number of bytes to read
+     * @return Buffer containing the bytes read
+     * @throws IOException The file cannot be read
+     */
+    private static ByteBuffer read(final FileChannel channel,
+                                   final ByteBuffer head, final long position,
+                                   final int length) throws IOException {
+        if (position + length <= head.limit()) {
+            ByteBuffer slice = head.duplicate();
+            slice.position((int) position);
+            slice.limit((int) position + length);
+            return slice.slice();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Fill the given buffer with the bytes read from the given position.
+     *
+     * @param channel  Channel to read from
+     * @param buffer   Buffer to fill
+     * @param position Position to read from
+     * @throws IOException The file cannot be read
+     */
+    static void readFully(final FileChannel channel, final ByteBuffer buffer,
+                          final long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, current);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            current += read;
+        }
+        Metrics.read(current - position);
+    }
+
+    /**
+     * Unpack the synchsafe integer written at the given index.
+     *
+     * @param buffer Buffer to read from
+     * @param index  Index of the integer
+     * @return Unpacked integer
+     */
+    private static int unpackSynchsafe(final ByteBuffer buffer,
+                                       final int index) {
+        return ((buffer.get(index) & 0x7f) << 21)
+                | ((buffer.get(index + 1) & 0x7f) << 14)
+                | ((buffer.get(index + 2) & 0x7f) << 7)
+                | (buffer.get(index + 3) & 0x7f);
+    }
+
+    /**
+     * Check if the given bytes contain the given ASCII string at the given
+     * index.
+     *
+     * @param bytes Bytes to check
+     * @param index Index of the string
+     * @param s     String to look for
+     * @return true if the bytes contain the string, false otherwise
+     */
+    private static boolean startsWith(final byte[] bytes, final int index,
+                                      final String s) {
+        if (index < 0 || index + s.length() > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (bytes[index + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+package com.alkisum.java.utils;
+
+import com.mpatric.mp3agic.AbstractID3v2Tag;
+import com.mpatric.mp3agic.NotSupportedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utility class writing the ID3v2 tag of a MP3 file. When the new tag fits in
+ * the space used by the old tag, including its padding, only the tag region
+ * is overwritten. Otherwise the file is rewritten once with some padding
+ * reserved after the tag, so the next changes can be written in place.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class TagWriter {
+
+    /**
+     * ID3v2 header length.
+     */
+    private static final int HEADER_LENGTH = 10;
+
+    /**
+     * TagWriter constructor.
+     */
+    private TagWriter() {
+
+    }
+
+    /**
+     * Write the given ID3v2 tag to the given MP3 file, replacing its current
+     * ID3v2 tag.
+     *
+     * @param file MP3 file to write
+     * @param tag  ID3v2 tag to write
+     * @return Number of bytes written
+     * @throws IOException           The file cannot be written
+     * @throws NotSupportedException Not supported tag
+     */
+    static long write(final File file, final AbstractID3v2Tag tag)
+            throws IOException, NotSupportedException {
+        // pack tag without padding nor footer, the padding is added here
+        tag.setPadding(false);
+        tag.setFooter(false);
+        byte[] bytes = tag.toBytes();
+
+        int oldLength;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(
+                    (int) Math.min(HEADER_LENGTH, channel.size()));
+            TagReader.readFully(channel, header, 0);
+            header.flip();
+            oldLength = TagReader.getId3v2Length(header);
+
+            // new tag fits in the old tag: overwrite the tag region only
+            if (oldLength > 0 && bytes.length <= oldLength) {
+                writeFully(channel, pad(bytes, oldLength), 0);
+                return oldLength;
+            }
+        }
+
+        // new tag does not fit: rewrite the file with reserved padding
+        return rewrite(file,
+                pad(bytes, bytes.length + Config.getTagPadding()), oldLength);
+    }
+
+    /**
+     * Rewrite the given MP3 file with the given tag followed by the content
+     * of the file located after the old tag. A temporary file is written and
+     * then moved to the original file, it is deleted if the rewrite fails.
+     *
+     * @param file      MP3 file to rewrite
+     * @param tagBytes  Tag to write, including its padding
+     * @param oldLength Length of the old tag, 0 if the file has no ID3v2 tag
+     * @return Number of bytes written
+     * @throws IOException The file cannot be written
+     */
+    private static long rewrite(final File file, final byte[] tagBytes,
+                                final int oldLength) throws IOException {
+        File tmpFile = new File(file.getPath() + "_tmp");
+        long written;
+        try {
+            try (FileChannel src = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ);
+                 FileChannel dst = FileChannel.open(tmpFile.toPath(),
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.WRITE)) {
+                writeFully(dst, tagBytes, 0);
+                dst.position(tagBytes.length);
+
+                // copy audio and trailing tags without going through the heap
+                long position = oldLength;
+                long size = src.size();
+                while (position < size) {
+                    position += src.transferTo(position, size - position,
+                            dst);
+                }
+                written = dst.size();
+            }
+            Files.move(tmpFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // never leave the temporary file in the album directory
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+        return written;
+    }
+
+    /**
+     * Pad the given tag with zeros up to the given length and update the tag
+     * size written in its header.
+     *
+     * @param bytes  Tag packed without padding
+     * @param length Length of the padded tag
+     * @return Padded tag
+     */
+    private static byte[] pad(final byte[] bytes, final int length) {
+        byte[] padded = new byte[length];
+        System.arraycopy(bytes, 0, padded, 0, bytes.length);
+        int size = length - HEADER_LENGTH;
+        padded[6] = (byte) ((size >> 21) & 0x7f);
+        padded[7] = (byte) ((size >> 14) & 0x7f);
+        padded[8] = (byte) ((size >> 7) & 0x7f);
+        padded[9] = (byte) (size & 0x7f);
+        return padded;
+    }
+
+    /**
+     * Write the given bytes to the given channel at the given position.
+     *
+     * @param channel  Channel to write to
+     * @param bytes    Bytes to write
+     * @param position Position to write at
+     * @throws IOException The file cannot be written
+     */
+    private static void writeFully(final FileChannel channel,
+                                   final byte[] bytes, final long position)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long current = position;
+        while (buffer.hasRemaining()) {
+            current += channel.write(buffer, current);
+        }
+    }
+}
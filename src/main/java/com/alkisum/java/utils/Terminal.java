@@ -9,41 +9,11 @@ import java.util.Scanner;
  * Utility class for printing messages on terminal.
  *
  * @author Alkisum
- * @version 1.0
+ * @version 1.3
  * @since 1.0
  */
 public final class Terminal {
 
-    /**
-     * Code to reset format.
-     */
-    private static final String ANSI_RESET = "\u001B[0m";
-
-    /**
-     * Code for red text.
-     */
-    private static final String ANSI_RED = "\u001B[31m";
-
-    /**
-     * Code for green text.
-     */
-    private static final String ANSI_GREEN = "\u001B[32m";
-
-    /**
-     * Code for yellow text.
-     */
-    private static final String ANSI_YELLOW = "\u001B[33m";
-
-    /**
-     * Code for blue text.
-     */
-    private static final String ANSI_BLUE = "\u001B[34m";
-
-    //public static final String ANSI_BLACK = "\u001B[30m";
-    //public static final String ANSI_PURPLE = "\u001B[35m";
-    //public static final String ANSI_CYAN = "\u001B[36m";
-    //public static final String ANSI_WHITE = "\u001B[37m";
-
     /**
      * Date format to parse the build date from the version number.
      */
@@ -56,6 +26,13 @@ public final class Terminal {
     private static final SimpleDateFormat FORMATTER =
             new SimpleDateFormat("MMMM dd, yyyy");
 
+    /**
+     * Flag set to true when an error, a warning or a question has been printed
+     * by the current thread since the last reset, false otherwise.
+     */
+    private static final ThreadLocal<Boolean> ISSUE_PRINTED =
+            ThreadLocal.withInitial(() -> false);
+
     /**
      * Terminal instance.
      */
@@ -81,11 +58,9 @@ public final class Terminal {
      */
     static void printError(final String message,
                            final int indent) {
-        String output = buildIndentedMessage(message, indent);
-        System.out.println(ANSI_RED + output + ANSI_RESET);
-        if (Config.isLogEnabled()) {
-            Logger.append(output + "\n");
-        }
+        ISSUE_PRINTED.set(true);
+        Metrics.error();
+        Console.print(Sink.Level.ERROR, indent, message);
     }
 
     /**
@@ -96,11 +71,8 @@ public final class Terminal {
      */
     static void printWarning(final String message,
                              final int indent) {
-        String output = buildIndentedMessage(message, indent);
-        System.out.println(ANSI_YELLOW + output + ANSI_RESET);
-        if (Config.isLogEnabled()) {
-            Logger.append(output + "\n");
-        }
+        ISSUE_PRINTED.set(true);
+        Console.print(Sink.Level.WARNING, indent, message);
     }
 
     /**
@@ -111,11 +83,7 @@ public final class Terminal {
      */
     static void printInfo(final String message,
                           final int indent) {
-        String output = buildIndentedMessage(message, indent);
-        System.out.println(output);
-        if (Config.isLogEnabled()) {
-            Logger.append(output + "\n");
-        }
+        Console.print(Sink.Level.INFO, indent, message);
     }
 
     /**
@@ -126,8 +94,8 @@ public final class Terminal {
      */
     static void printQuestion(final String message,
                               final int indent) {
-        String output = buildIndentedMessage(message, indent);
-        System.out.println(ANSI_BLUE + output + ANSI_RESET);
+        ISSUE_PRINTED.set(true);
+        Console.print(Sink.Level.QUESTION, indent, message);
     }
 
     /**
@@ -138,28 +106,23 @@ public final class Terminal {
      */
     static void printConfirmation(final String message,
                                   final int indent) {
-        String output = buildIndentedMessage(message, indent);
-        System.out.println(ANSI_GREEN + output + ANSI_RESET);
-        if (Config.isLogEnabled()) {
-            Logger.append(output + "\n");
-        }
+        Console.print(Sink.Level.CONFIRMATION, indent, message);
     }
 
     /**
-     * Indent the message according to the given indent number.
-     *
-     * @param message Message to indent
-     * @param indent  Number of indent to use
-     * @return Indented message
+     * Reset the issue flag of the current thread, called before processing
+     * an album.
      */
-    private static String buildIndentedMessage(final String message,
-                                               final int indent) {
-        StringBuilder messageBuilder = new StringBuilder();
-        for (int i = 0; i < indent; i++) {
-            messageBuilder.append("\t");
-        }
-        messageBuilder.append(message);
-        return messageBuilder.toString();
+    static void resetIssues() {
+        ISSUE_PRINTED.set(false);
+    }
+
+    /**
+     * @return true if an error, a warning or a question has been printed by
+     * the current thread since the last reset, false otherwise
+     */
+    static boolean hasIssues() {
+        return ISSUE_PRINTED.get();
     }
 
     /**
@@ -168,11 +131,16 @@ public final class Terminal {
      * @param indent Number of indent to use
      */
     public static void askToContinue(final int indent) {
+        // nothing is asked in plan mode
+        if (Plan.isEnabled()) {
+            return;
+        }
+
         // ask confirmation to continue
         printQuestion("Continue? (Y/n)", indent);
 
         // get response from user
-        String response = getScanner().nextLine();
+        String response = readLine();
 
         // check if user wants to continue
         if (response.toLowerCase().equals("n")) {
@@ -187,11 +155,16 @@ public final class Terminal {
      * @return true if the use wants to retry, false otherwise
      */
     static boolean askToRetry(final int indent) {
+        // nothing is asked in plan mode
+        if (Plan.isEnabled()) {
+            return false;
+        }
+
         // ask confirmation to retry
         printQuestion("Retry? (Y/n)", indent);
 
         // get response from user
-        String response = getScanner().nextLine();
+        String response = readLine();
 
         // check if user wants to retry
         return !response.toLowerCase().equals("n");
@@ -247,9 +220,36 @@ public final class Terminal {
         System.out.printf(format, "--version", "Show program's version");
         System.out.printf(format, "--help", "Show help message");
         System.out.printf(format, "--artist=\"<artist directory name>\"",
-                "Proceed with the given artist only");
+                "Proceed with the given artist only (repeatable, glob)");
         System.out.printf(format, "--album=\"<album directory name>\"",
-                "Proceed with the given album only");
+                "Proceed with the given album only (repeatable, glob)");
+        System.out.printf(format, "--paths-from=<file>",
+                "Proceed with the <artist>[/<album>] listed in the file");
+        System.out.printf(format, "--threads=<number of threads>",
+                "Process the albums with the given number of threads");
+        System.out.printf(format, "--quiet",
+                "Print only the errors, warnings and questions");
+        System.out.printf(format, "--format=<text|ndjson>",
+                "Print the messages as text or as one JSON object per line");
+        System.out.printf(format, "--resume",
+                "Continue from the checkpoint of the interrupted run");
+        System.out.printf(format, "--shard=<index>/<number of shards>",
+                "Process the artists of the given shard only");
+        System.out.printf(format, "--merge-metrics=<metrics file>",
+                "Merge the metrics files of the shards (repeatable)");
+        System.out.printf(format, "--plan=<plan file>",
+                "Write the actions to the plan file without executing them");
+        System.out.printf(format, "--apply=<plan file>",
+                "Execute the actions written in the plan file");
+    }
+
+    /**
+     * Read a line entered by the user.
+     *
+     * @return Line entered by the user
+     */
+    static String readLine() {
+        return Console.readLine();
     }
 
     /**
@@ -262,6 +262,13 @@ public final class Terminal {
         return terminal.scanner;
     }
 
+    /**
+     * Write the messages waiting to be printed to the console.
+     */
+    public static void flush() {
+        Console.flush();
+    }
+
     /**
      * Close the scanner instance.
      */
@@ -0,0 +1,218 @@
+package com.alkisum.java.utils;
+
+import com.mpatric.mp3agic.InvalidDataException;
+import com.mpatric.mp3agic.Mp3File;
+import com.mpatric.mp3agic.UnsupportedTagException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the MP3 files read during the run. The tags and the cover digest
+ * of each MP3 file are read once and served to every step reading them, as
+ * long as its size and last modified time do not change and it is not saved
+ * by the program.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class TrackCache {
+
+    /**
+     * Maximum number of MP3 files kept in the cache. The least recently used
+     * MP3 file is removed when the cache is full, the MP3 files of the albums
+     * being processed are then kept while the MP3 files of the albums already
+     * processed are released.
+     */
+    private static final int MAX_ENTRIES = 256;
+
+    /**
+     * Cached tracks mapped by their path.
+     */
+    private static final Map<String, Track> TRACKS = new LinkedHashMap<
+            String, Track>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+                final Map.Entry<String, Track> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * TrackCache constructor.
+     */
+    private TrackCache() {
+
+    }
+
+    /**
+     * Get the tags of the given album entry, read them only if they are not in
+     * the cache or if the file has changed since they have been read. The
+     * tags are read without scanning the MPEG frames.
+     *
+     * @param entry Album entry of the MP3 file
+     * @return MP3 file tags
+     * @throws InvalidDataException    Invalid data
+     * @throws IOException             The file cannot be read
+     * @throws UnsupportedTagException Unsupported tag
+     */
+    static TrackTags getTags(final AlbumSnapshot.Entry entry)
+            throws InvalidDataException, IOException, UnsupportedTagException {
+        Track track = getTrack(entry);
+        synchronized (TRACKS) {
+            if (track.tags != null) {
+                return track.tags;
+            }
+        }
+
+        // read tags outside of the lock
+        TrackTags tags = TagReader.read(entry.getFile());
+        synchronized (TRACKS) {
+            track.tags = tags;
+        }
+        return tags;
+    }
+
+    /**
+     * Get the digest of the cover image embedded in the given album entry,
+     * compute it only if it is not in the cache or if the file has changed
+     * since it has been computed.
+     *
+     * @param entry Album entry of the MP3 file
+     * @return Digest of the cover image, null if the file has no cover
+     * @throws InvalidDataException    Invalid data
+     * @throws IOException             The file cannot be read
+     * @throws UnsupportedTagException Unsupported tag
+     */
+    static byte[] getCoverDigest(final AlbumSnapshot.Entry entry)
+            throws InvalidDataException, IOException, UnsupportedTagException {
+        Track track = getTrack(entry);
+        synchronized (TRACKS) {
+            if (track.coverDigested) {
+                return track.coverDigest;
+            }
+        }
+
+        // compute digest outside of the lock
+        byte[] digest = TagReader.digestCover(entry.getFile(),
+                getTags(entry));
+        synchronized (TRACKS) {
+            track.coverDigest = digest;
+            track.coverDigested = true;
+        }
+        return digest;
+    }
+
+    /**
+     * Get the MP3 file for the given album entry, parse it only if it is not
+     * in the cache or if it has changed since it has been parsed. The whole
+     * file is scanned, this is only needed for the audio information and for
+     * saving the file.
+     *
+     * @param entry Album entry of the MP3 file
+     * @return MP3 file
+     * @throws InvalidDataException    Invalid data
+     * @throws IOException             The file cannot be read
+     * @throws UnsupportedTagException Unsupported tag
+     */
+    static Mp3File get(final AlbumSnapshot.Entry entry)
+            throws InvalidDataException, IOException, UnsupportedTagException {
+        Track track = getTrack(entry);
+        synchronized (TRACKS) {
+            if (track.mp3File != null) {
+                return track.mp3File;
+            }
+        }
+
+        // parse MP3 file outside of the lock
+        Mp3File mp3File = new Mp3File(entry.getFile());
+        Metrics.read(entry.getSize());
+        synchronized (TRACKS) {
+            track.mp3File = mp3File;
+        }
+        return mp3File;
+    }
+
+    /**
+     * Get the cached track for the given album entry, replace it by an empty
+     * track if the file has changed since it has been cached.
+     *
+     * @param entry Album entry of the MP3 file
+     * @return Cached track
+     */
+    private static Track getTrack(final AlbumSnapshot.Entry entry) {
+        String path = entry.getFile().getAbsolutePath();
+        synchronized (TRACKS) {
+            Track track = TRACKS.get(path);
+            if (track == null || track.size != entry.getSize()
+                    || track.lastModified != entry.getLastModified()) {
+                track = new Track(entry.getSize(), entry.getLastModified());
+                TRACKS.put(path, track);
+            }
+            return track;
+        }
+    }
+
+    /**
+     * Remove the given MP3 file from the cache, called when the file is
+     * rewritten.
+     *
+     * @param file MP3 file
+     */
+    static void invalidate(final File file) {
+        synchronized (TRACKS) {
+            TRACKS.remove(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Tags and parsed MP3 file with the attributes they have been read with.
+     */
+    private static final class Track {
+
+        /**
+         * Tags, null if not read yet.
+         */
+        private TrackTags tags;
+
+        /**
+         * Parsed MP3 file, null if not parsed yet.
+         */
+        private Mp3File mp3File;
+
+        /**
+         * Digest of the embedded cover image, null if the file has no cover.
+         */
+        private byte[] coverDigest;
+
+        /**
+         * Flag set to true if the cover digest has been computed, false
+         * otherwise.
+         */
+        private boolean coverDigested;
+
+        /**
+         * File size in bytes when the file has been parsed.
+         */
+        private final long size;
+
+        /**
+         * Last modified time in milliseconds when the file has been parsed.
+         */
+        private final long lastModified;
+
+        /**
+         * Track constructor.
+         *
+         * @param size         File size in bytes
+         * @param lastModified Last modified time in milliseconds
+         */
+        private Track(final long size, final long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
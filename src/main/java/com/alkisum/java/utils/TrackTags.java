@@ -0,0 +1,270 @@
+package com.alkisum.java.utils;
+
+import com.mpatric.mp3agic.ID3v1Genres;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tag information of a MP3 file read by {@link TagReader}, without the audio
+ * information.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class TrackTags {
+
+    /**
+     * Flag set to true if the MP3 file has an ID3v1 tag, false otherwise.
+     */
+    private final boolean id3v1;
+
+    /**
+     * Text fields of the ID3v1 tag mapped by their ID3v2 frame id, empty if
+     * the MP3 file has no ID3v1 tag.
+     */
+    private final Map<String, String> id3v1Texts;
+
+    /**
+     * Flag set to true if the MP3 file has an ID3v2 tag, false otherwise.
+     */
+    private final boolean id3v2;
+
+    /**
+     * Length in bytes of the ID3v2 tag at the beginning of the file,
+     * including its header, padding and footer.
+     */
+    private final int id3v2Length;
+
+    /**
+     * Ids of the frames contained in the ID3v2 tag.
+     */
+    private final Set<String> frameIds;
+
+    /**
+     * Text frames of the ID3v2 tag read by {@link TagReader} mapped by their
+     * frame id.
+     */
+    private final Map<String, String> id3v2Texts;
+
+    /**
+     * Position in the file of the first cover frame data, -1 if the MP3 file
+     * has no cover frame or if the cover frame cannot be read in place.
+     */
+    private final int coverOffset;
+
+    /**
+     * Length in bytes of the first cover frame data.
+     */
+    private final int coverLength;
+
+    /**
+     * Flag set to true if the MP3 file has a custom tag at the end of the
+     * file, false otherwise.
+     */
+    private final boolean customTag;
+
+    /**
+     * TrackTags constructor.
+     *
+     * @param id3v1       true if the MP3 file has an ID3v1 tag
+     * @param id3v1Texts  Text fields of the ID3v1 tag
+     * @param id3v2       true if the MP3 file has an ID3v2 tag
+     * @param id3v2Length Length in bytes of the ID3v2 tag
+     * @param frameIds    Ids of the frames contained in the ID3v2 tag
+     * @param id3v2Texts  Text frames of the ID3v2 tag
+     * @param coverOffset Position of the first cover frame data, -1 if
+     *                    unknown
+     * @param coverLength Length of the first cover frame data
+     * @param customTag   true if the MP3 file has a custom tag
+     */
+    TrackTags(final boolean id3v1, final Map<String, String> id3v1Texts,
+              final boolean id3v2, final int id3v2Length,
+              final Set<String> frameIds,
+              final Map<String, String> id3v2Texts,
+              final int coverOffset, final int coverLength,
+              final boolean customTag) {
+        this.id3v1 = id3v1;
+        this.id3v1Texts = Collections.unmodifiableMap(id3v1Texts);
+        this.id3v2 = id3v2;
+        this.id3v2Length = id3v2Length;
+        this.frameIds = Collections.unmodifiableSet(frameIds);
+        this.id3v2Texts = Collections.unmodifiableMap(id3v2Texts);
+        this.coverOffset = coverOffset;
+        this.coverLength = coverLength;
+        this.customTag = customTag;
+    }
+
+    /**
+     * @return true if the MP3 file has an ID3v1 tag, false otherwise
+     */
+    boolean hasId3v1Tag() {
+        return id3v1;
+    }
+
+    /**
+     * @return true if the MP3 file has an ID3v2 tag, false otherwise
+     */
+    boolean hasId3v2Tag() {
+        return id3v2;
+    }
+
+    /**
+     * @return Length in bytes of the ID3v2 tag at the beginning of the file,
+     * including its header, padding and footer
+     */
+    int getId3v2Length() {
+        return id3v2Length;
+    }
+
+    /**
+     * @return Ids of the frames contained in the ID3v2 tag
+     */
+    Set<String> getFrameIds() {
+        return frameIds;
+    }
+
+    /**
+     * @return true if the MP3 file has a cover frame, false otherwise
+     */
+    boolean hasCover() {
+        return frameIds.contains(TagReader.COVER)
+                || frameIds.contains(TagReader.OBSOLETE_COVER);
+    }
+
+    /**
+     * @return Position in the file of the first cover frame data, -1 if the
+     * MP3 file has no cover frame or if the cover frame cannot be read in
+     * place
+     */
+    int getCoverOffset() {
+        return coverOffset;
+    }
+
+    /**
+     * @return Length in bytes of the first cover frame data
+     */
+    int getCoverLength() {
+        return coverLength;
+    }
+
+    /**
+     * @return true if the MP3 file has a custom tag at the end of the file,
+     * false otherwise
+     */
+    boolean hasCustomTag() {
+        return customTag;
+    }
+
+    /**
+     * Get the text of the given frame, read from the ID3v2 tag, or from the
+     * ID3v1 tag if the ID3v2 tag does not contain it. The ID3v1 tag has no
+     * field for some frames, such as the disc number and the album artist.
+     *
+     * @param frameId Frame id, as used in ID3v2.3 tags
+     * @return Text of the frame, null if the frame is not in the tags
+     */
+    String getText(final String frameId) {
+        if (!id3v1 && !id3v2) {
+            return "";
+        }
+        String text = id3v2Texts.get(frameId);
+        if (text == null) {
+            text = id3v1Texts.get(frameId);
+        }
+        return text;
+    }
+
+    /**
+     * @return Artist written in the MP3 tag
+     */
+    String getArtist() {
+        return getText(TagReader.ARTIST);
+    }
+
+    /**
+     * @return Album written in the MP3 tag
+     */
+    String getAlbum() {
+        return getText(TagReader.ALBUM);
+    }
+
+    /**
+     * @return Year written in the MP3 tag
+     */
+    String getYear() {
+        return getText(TagReader.YEAR);
+    }
+
+    /**
+     * @return Genre written in the MP3 tag, the ID3v1 genre numbers being
+     * replaced by their description
+     */
+    String getGenre() {
+        String genre = getText(TagReader.GENRE);
+        if (genre == null || !genre.startsWith("(")) {
+            return genre;
+        }
+
+        // ID3v2.3 genre written as "(number)" or "(number)description"
+        int end = genre.indexOf(')');
+        if (end < 0) {
+            return genre;
+        }
+        if (end + 1 < genre.length()) {
+            return genre.substring(end + 1);
+        }
+        try {
+            int number = Integer.parseInt(genre.substring(1, end));
+            if (number >= 0 && number < ID3v1Genres.GENRES.length) {
+                return ID3v1Genres.GENRES[number];
+            }
+        } catch (NumberFormatException e) {
+            // not a genre number: keep the text as written
+            return genre;
+        }
+        return genre;
+    }
+
+    /**
+     * @return Disc number written in the MP3 tag, without the number of discs
+     */
+    String getDisc() {
+        return getNumber(TagReader.DISC);
+    }
+
+    /**
+     * @return Album artist written in the MP3 tag
+     */
+    String getAlbumArtist() {
+        return getText(TagReader.ALBUM_ARTIST);
+    }
+
+    /**
+     * @return Number of tracks written after the track number in the MP3 tag,
+     * null if the tag does not contain it
+     */
+    String getTrackCount() {
+        String track = getText(TagReader.TRACK);
+        if (track == null || track.indexOf('/') < 0) {
+            return null;
+        }
+        return track.substring(track.indexOf('/') + 1);
+    }
+
+    /**
+     * Get the number of the given frame written as "number/total".
+     *
+     * @param frameId Frame id, as used in ID3v2.3 tags
+     * @return Number without the total, null if the frame is not in the tag
+     */
+    private String getNumber(final String frameId) {
+        String number = getText(frameId);
+        if (number == null || number.indexOf('/') < 0) {
+            return number;
+        }
+        return number.substring(0, number.indexOf('/'));
+    }
+}
@@ -0,0 +1,327 @@
+package com.alkisum.java.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utility class removing the tags located at the end of a MP3 file: the ID3v1
+ * tag (with its enhanced block) and the custom tags written before it (APEv2,
+ * Lyrics3 v1 and v2). The blocks are located by reading only the end of the
+ * file and are removed by truncating the file, the audio data is never
+ * copied.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+final class TrailingTags {
+
+    /**
+     * ID3v1 tag length.
+     */
+    private static final int ID3V1_LENGTH = 128;
+
+    /**
+     * Enhanced ID3v1 block length, written right before the ID3v1 tag.
+     */
+    private static final int ID3V1_ENHANCED_LENGTH = 227;
+
+    /**
+     * APEv2 header and footer length.
+     */
+    private static final int APE_FOOTER_LENGTH = 32;
+
+    /**
+     * APEv2 flag set when the tag has a header.
+     */
+    private static final int APE_HAS_HEADER = 0x80000000;
+
+    /**
+     * Lyrics3 start marker.
+     */
+    private static final String LYRICS_BEGIN = "LYRICSBEGIN";
+
+    /**
+     * Lyrics3 v1 end marker.
+     */
+    private static final String LYRICS_END = "LYRICSEND";
+
+    /**
+     * Lyrics3 v2 end marker.
+     */
+    private static final String LYRICS_200 = "LYRICS200";
+
+    /**
+     * Length of the size field written before the Lyrics3 v2 end marker.
+     */
+    private static final int LYRICS_SIZE_LENGTH = 6;
+
+    /**
+     * Maximum length of a Lyrics3 v1 tag, markers included.
+     */
+    private static final int LYRICS_V1_MAX_LENGTH = 5100 + 11 + 9;
+
+    /**
+     * Number of bytes read at the end of the file to locate the ID3v1 tag,
+     * its enhanced block and the end of the custom tag written before them.
+     */
+    private static final int TAIL_LENGTH = ID3V1_LENGTH
+            + ID3V1_ENHANCED_LENGTH + APE_FOOTER_LENGTH;
+
+    /**
+     * TrailingTags constructor.
+     */
+    private TrailingTags() {
+
+    }
+
+    /**
+     * Remove the given trailing tags from the given MP3 file. When only the
+     * custom tags are removed, the ID3v1 tag is moved right after the audio
+     * data.
+     *
+     * @param song       MP3 file
+     * @param id3v1Tag   true if the ID3v1 tag has to be removed
+     * @param customTags true if the custom tags have to be removed
+     * @return Number of bytes written
+     * @throws IOException The file cannot be read or written
+     */
+    static long strip(final File song, final boolean id3v1Tag,
+                      final boolean customTags) throws IOException {
+        try (FileChannel channel = FileChannel.open(song.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+
+            // locate the ID3v1 tag and its enhanced block
+            long id3v1Start = findId3v1Start(readTail(channel, size), size);
+
+            // locate the custom tags written before the ID3v1 tag, possibly
+            // several of them
+            long customStart = id3v1Start;
+            long start;
+            while ((start = findCustomTagStart(channel, customStart))
+                    < customStart) {
+                customStart = start;
+            }
+
+            // bytes to keep after the audio data
+            ByteBuffer kept = null;
+            long end = size;
+            if (customTags && customStart < id3v1Start) {
+                end = customStart;
+                if (!id3v1Tag && id3v1Start < size) {
+                    kept = ByteBuffer.allocate((int) (size - id3v1Start));
+                    TagReader.readFully(channel, kept, id3v1Start);
+                    kept.flip();
+                }
+            }
+            if (id3v1Tag && id3v1Start < size && end == size) {
+                end = id3v1Start;
+            }
+            if (end == size) {
+                return 0;
+            }
+
+            // cut the file, then write the kept ID3v1 tag back
+            channel.truncate(end);
+            long written = 0;
+            if (kept != null) {
+                while (kept.hasRemaining()) {
+                    written += channel.write(kept, end + written);
+                }
+            }
+            return written;
+        } finally {
+            // the file has changed
+            TrackCache.invalidate(song);
+        }
+    }
+
+    /**
+     * Read the end of the given MP3 file, enough to locate the trailing tags
+     * with {@link #findId3v1Start(byte[], long)} and
+     * {@link #hasCustomTag(byte[], long)}.
+     *
+     * @param channel Channel of the MP3 file
+     * @param size    Size of the file
+     * @return Last bytes of the file
+     * @throws IOException The file cannot be read
+     */
+    static byte[] readTail(final FileChannel channel, final long size)
+            throws IOException {
+        int length = (int) Math.min(TAIL_LENGTH, size);
+        return read(channel, size - length, length).array();
+    }
+
+    /**
+     * Find the start of the ID3v1 tag, including the enhanced block written
+     * before it.
+     *
+     * @param tail Last bytes of the file, read by
+     *             {@link #readTail(FileChannel, long)}
+     * @param size Size of the file
+     * @return Start of the ID3v1 tag, the end of the file if there is none
+     */
+    static long findId3v1Start(final byte[] tail, final long size) {
+        int start = tail.length - ID3V1_LENGTH;
+        if (start < 0 || !startsWith(tail, start, "TAG")) {
+            return size;
+        }
+        if (start >= ID3V1_ENHANCED_LENGTH
+                && startsWith(tail, start - ID3V1_ENHANCED_LENGTH, "TAG+")) {
+            start -= ID3V1_ENHANCED_LENGTH;
+        }
+        return size - tail.length + start;
+    }
+
+    /**
+     * Check if a custom tag (APEv2, Lyrics3 v1 or v2) ends right before the
+     * ID3v1 tag and its enhanced block, or at the end of the file if there is
+     * no ID3v1 tag.
+     *
+     * @param tail Last bytes of the file, read by
+     *             {@link #readTail(FileChannel, long)}
+     * @param size Size of the file
+     * @return true if the file has a custom tag, false otherwise
+     */
+    static boolean hasCustomTag(final byte[] tail, final long size) {
+        int end = (int) (findId3v1Start(tail, size) - (size - tail.length));
+        return endsWith(tail, end, LYRICS_200)
+                || endsWith(tail, end, LYRICS_END)
+                || (end >= APE_FOOTER_LENGTH && startsWith(tail,
+                end - APE_FOOTER_LENGTH, "APETAGEX"));
+    }
+
+    /**
+     * Find the start of the custom tag ending at the given position.
+     *
+     * @param channel Channel of the MP3 file
+     * @param end     End of the custom tag
+     * @return Start of the custom tag, the given end if there is none
+     * @throws IOException The file cannot be read
+     */
+    private static long findCustomTagStart(final FileChannel channel,
+                                           final long end)
+            throws IOException {
+        // APEv2 tag: the size in the footer covers the items and the footer
+        if (end >= APE_FOOTER_LENGTH
+                && matches(channel, end - APE_FOOTER_LENGTH, "APETAGEX")) {
+            ByteBuffer footer = read(channel, end - APE_FOOTER_LENGTH,
+                    APE_FOOTER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            long length = footer.getInt(12) & 0xffffffffL;
+            if ((footer.getInt(20) & APE_HAS_HEADER) != 0) {
+                length += APE_FOOTER_LENGTH;
+            }
+            if (length >= APE_FOOTER_LENGTH && length <= end) {
+                return end - length;
+            }
+            return end;
+        }
+
+        // Lyrics3 v2 tag: the size is written before the end marker
+        int sizedLength = LYRICS_SIZE_LENGTH + LYRICS_200.length();
+        if (end >= sizedLength
+                && matches(channel, end - LYRICS_200.length(), LYRICS_200)) {
+            String digits = new String(read(channel, end - sizedLength,
+                    LYRICS_SIZE_LENGTH).array(), StandardCharsets.US_ASCII);
+            try {
+                long start = end - sizedLength - Long.parseLong(digits);
+                if (start >= 0 && matches(channel, start, LYRICS_BEGIN)) {
+                    return start;
+                }
+            } catch (NumberFormatException e) {
+                // not a Lyrics3 v2 tag
+            }
+            return end;
+        }
+
+        // Lyrics3 v1 tag: look for the start marker in the last bytes
+        if (end >= LYRICS_END.length()
+                && matches(channel, end - LYRICS_END.length(), LYRICS_END)) {
+            int length = (int) Math.min(end, LYRICS_V1_MAX_LENGTH);
+            byte[] bytes = read(channel, end - length, length).array();
+            for (int i = length - LYRICS_END.length() - LYRICS_BEGIN.length();
+                 i >= 0; i--) {
+                if (startsWith(bytes, i, LYRICS_BEGIN)) {
+                    return end - length + i;
+                }
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Check if the file contains the given ASCII string at the given
+     * position.
+     *
+     * @param channel  Channel of the MP3 file
+     * @param position Position of the string
+     * @param s        String to look for
+     * @return true if the file contains the string, false otherwise
+     * @throws IOException The file cannot be read
+     */
+    private static boolean matches(final FileChannel channel,
+                                   final long position, final String s)
+            throws IOException {
+        return startsWith(read(channel, position, s.length()).array(), 0, s);
+    }
+
+    /**
+     * Check if the given bytes contain the given ASCII string at the given
+     * index.
+     *
+     * @param bytes Bytes to check
+     * @param index Index of the string
+     * @param s     String to look for
+     * @return true if the bytes contain the string, false otherwise
+     */
+    private static boolean startsWith(final byte[] bytes, final int index,
+                                      final String s) {
+        if (index < 0 || index + s.length() > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (bytes[index + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the given bytes contain the given ASCII string right before the
+     * given index.
+     *
+     * @param bytes Bytes to check
+     * @param end   Index following the string
+     * @param s     String to look for
+     * @return true if the bytes contain the string, false otherwise
+     */
+    private static boolean endsWith(final byte[] bytes, final int end,
+                                    final String s) {
+        return startsWith(bytes, end - s.length(), s);
+    }
+
+    /**
+     * Read the given number of bytes at the given position.
+     *
+     * @param channel  Channel of the MP3 file
+     * @param position Position of the bytes
+     * @param length   Number of bytes to read
+     * @return Bytes read
+     * @throws IOException The file cannot be read
+     */
+    private static ByteBuffer read(final FileChannel channel,
+                                   final long position, final int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        TagReader.readFully(channel, buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+}
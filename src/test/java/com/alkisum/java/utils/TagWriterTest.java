@@ -0,0 +1,188 @@
+package com.alkisum.java.utils;
+
+import com.mpatric.mp3agic.AbstractID3v2Tag;
+import com.mpatric.mp3agic.ID3v23Tag;
+import com.mpatric.mp3agic.ID3v24Tag;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests of the ID3v2 tag writes, in place and by rewriting the file.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+public class TagWriterTest {
+
+    /**
+     * Padding reserved when the file is rewritten.
+     */
+    private static final int PADDING = 100;
+
+    /**
+     * ID3v2 header length.
+     */
+    private static final int HEADER_LENGTH = 10;
+
+    /**
+     * Directory containing the fixtures.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Write the properties file used by the tests in the working directory
+     * and load it.
+     *
+     * @throws IOException The properties file cannot be written
+     */
+    @BeforeClass
+    public static void configure() throws IOException {
+        Files.write(new File("discocleaner.properties").toPath(),
+                ("tag.padding=" + PADDING + "\n")
+                        .getBytes(StandardCharsets.ISO_8859_1));
+        Config.build();
+    }
+
+    /**
+     * A tag fitting in the old tag is written in place, padded to the length
+     * of the old tag.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void writeInPlace() throws Exception {
+        File song = write(header(3, 0, 1000), new byte[1000], audio());
+
+        assertEquals(1010, TagWriter.write(song, tag(new ID3v23Tag())));
+        byte[] bytes = read(song);
+        assertEquals(1010 + audio().length, bytes.length);
+        assertArrayEquals(header(3, 0, 1000), Arrays.copyOf(bytes, 10));
+        assertEquals("TIT2", new String(bytes, 10, 4,
+                StandardCharsets.US_ASCII));
+        assertArrayEquals(audio(), Arrays.copyOfRange(bytes, 1010,
+                bytes.length));
+    }
+
+    /**
+     * A tag not fitting in the old tag is written by rewriting the file, with
+     * the configured padding after the tag.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void writeGrowing() throws Exception {
+        File song = write(header(3, 0, 10), new byte[10], audio());
+        AbstractID3v2Tag tag = tag(new ID3v23Tag());
+        tag.setPadding(false);
+        int length = tag.toBytes().length + PADDING;
+
+        assertEquals(length + audio().length, TagWriter.write(song, tag));
+        byte[] bytes = read(song);
+        assertEquals(length + audio().length, bytes.length);
+        assertArrayEquals(header(3, 0, length - HEADER_LENGTH),
+                Arrays.copyOf(bytes, 10));
+        assertArrayEquals(new byte[PADDING], Arrays.copyOfRange(bytes,
+                length - PADDING, length));
+        assertArrayEquals(audio(), Arrays.copyOfRange(bytes, length,
+                bytes.length));
+        assertFalse(new File(song.getPath() + "_tmp").exists());
+    }
+
+    /**
+     * A tag written in place of a v2.4 tag with a footer uses the footer
+     * space as padding and is written without footer.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void writeInPlaceOfFooter() throws Exception {
+        byte[] footer = header(4, 0x10, 200);
+        footer[0] = '3';
+        footer[1] = 'D';
+        footer[2] = 'I';
+        File song = write(header(4, 0x10, 200), new byte[200], footer,
+                audio());
+
+        assertEquals(220, TagWriter.write(song, tag(new ID3v24Tag())));
+        byte[] bytes = read(song);
+        assertEquals(220 + audio().length, bytes.length);
+        assertArrayEquals(header(4, 0, 210), Arrays.copyOf(bytes, 10));
+        assertArrayEquals(new byte[10], Arrays.copyOfRange(bytes, 210, 220));
+        assertArrayEquals(audio(), Arrays.copyOfRange(bytes, 220,
+                bytes.length));
+    }
+
+    /**
+     * @param tag Empty ID3v2 tag
+     * @return Tag with a title
+     */
+    private static AbstractID3v2Tag tag(final AbstractID3v2Tag tag) {
+        tag.setTitle("Song");
+        return tag;
+    }
+
+    /**
+     * Build an ID3v2 header.
+     *
+     * @param major Major version
+     * @param flags Flags
+     * @param size  Size of the tag, header and footer excluded
+     * @return ID3v2 header
+     */
+    private static byte[] header(final int major, final int flags,
+                                 final int size) {
+        return new byte[]{'I', 'D', '3', (byte) major, 0, (byte) flags,
+                (byte) ((size >> 21) & 0x7f), (byte) ((size >> 14) & 0x7f),
+                (byte) ((size >> 7) & 0x7f), (byte) (size & 0x7f)};
+    }
+
+    /**
+     * @return Audio data, MPEG frame headers followed by arbitrary bytes
+     */
+    private static byte[] audio() {
+        byte[] audio = new byte[1024];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (byte) (i % 417 == 0 ? 0xff : i * 31);
+        }
+        return audio;
+    }
+
+    /**
+     * Write a MP3 file made of the given parts.
+     *
+     * @param parts Parts of the file
+     * @return Written file
+     * @throws IOException The file cannot be written
+     */
+    private File write(final byte[]... parts) throws IOException {
+        File song = folder.newFile("01 - Song.mp3");
+        for (byte[] part : parts) {
+            Files.write(song.toPath(), part, StandardOpenOption.APPEND);
+        }
+        return song;
+    }
+
+    /**
+     * @param song MP3 file
+     * @return Content of the file
+     * @throws IOException The file cannot be read
+     */
+    private static byte[] read(final File song) throws IOException {
+        return Files.readAllBytes(song.toPath());
+    }
+}
@@ -0,0 +1,60 @@
+package com.alkisum.java.utils;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the text lookup of {@link TrackTags}.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+public class TrackTagsTest {
+
+    /**
+     * The frames of a MP3 file with both tags are read from the ID3v2 tag,
+     * the frames missing in the ID3v1 tag included.
+     */
+    @Test
+    public void getTextWithBothTags() {
+        Map<String, String> id3v1Texts = new HashMap<>();
+        id3v1Texts.put(TagReader.ARTIST, "Artist v1");
+        id3v1Texts.put(TagReader.ALBUM, "Album");
+        Map<String, String> id3v2Texts = new HashMap<>();
+        id3v2Texts.put(TagReader.ARTIST, "Artist v2");
+        id3v2Texts.put(TagReader.DISC, "2/3");
+        id3v2Texts.put(TagReader.ALBUM_ARTIST, "Album Artist");
+        TrackTags tags = new TrackTags(true, id3v1Texts, true, 1024,
+                id3v2Texts.keySet(), id3v2Texts, -1, 0, false);
+
+        assertEquals("Artist v2", tags.getArtist());
+        assertEquals("2", tags.getDisc());
+        assertEquals("Album Artist", tags.getAlbumArtist());
+        // missing in the ID3v2 tag: read from the ID3v1 tag
+        assertEquals("Album", tags.getAlbum());
+        assertNull(tags.getYear());
+    }
+
+    /**
+     * The frames of a MP3 file with an ID3v1 tag only are read from the ID3v1
+     * tag.
+     */
+    @Test
+    public void getTextWithId3v1TagOnly() {
+        Map<String, String> id3v1Texts = new HashMap<>();
+        id3v1Texts.put(TagReader.ARTIST, "Artist");
+        TrackTags tags = new TrackTags(true, id3v1Texts, false, 0,
+                Collections.emptySet(), Collections.emptyMap(), -1, 0,
+                false);
+
+        assertEquals("Artist", tags.getArtist());
+        assertNull(tags.getAlbumArtist());
+    }
+}
@@ -0,0 +1,281 @@
+package com.alkisum.java.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the detection and of the removal of the tags located at the end
+ * of a MP3 file.
+ *
+ * @author Alkisum
+ * @version 1.3
+ * @since 1.3
+ */
+public class TrailingTagsTest {
+
+    /**
+     * APEv2 flag set when the tag has a header.
+     */
+    private static final int APE_HAS_HEADER = 0x80000000;
+
+    /**
+     * APEv2 flag set in the header.
+     */
+    private static final int APE_IS_HEADER = 0x20000000;
+
+    /**
+     * Directory containing the fixtures.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * An APEv2 tag written before an enhanced ID3v1 tag is detected and
+     * removed, the enhanced ID3v1 tag being kept.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void apeBeforeEnhancedId3v1Tag() throws Exception {
+        byte[] id3v1 = concat(enhancedBlock(), id3v1Tag());
+        File song = write(audio(), apeTag(false), id3v1);
+
+        assertTrue(TagReader.read(song).hasCustomTag());
+        assertTrue(TagReader.read(song).hasId3v1Tag());
+        assertEquals(id3v1.length, TrailingTags.strip(song, false, true));
+        assertArrayEquals(concat(audio(), id3v1), read(song));
+        assertFalse(TagReader.read(song).hasCustomTag());
+    }
+
+    /**
+     * An APEv2 tag without header is removed, the ID3v1 tag being written
+     * back unchanged.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void apeWithoutHeader() throws Exception {
+        File song = write(audio(), apeTag(false), id3v1Tag());
+
+        assertTrue(TagReader.read(song).hasCustomTag());
+        TrailingTags.strip(song, false, true);
+        assertArrayEquals(concat(audio(), id3v1Tag()), read(song));
+    }
+
+    /**
+     * An APEv2 tag with a header is removed with its header.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void apeWithHeader() throws Exception {
+        File song = write(audio(), apeTag(true), id3v1Tag());
+
+        assertTrue(TagReader.read(song).hasCustomTag());
+        TrailingTags.strip(song, false, true);
+        assertArrayEquals(concat(audio(), id3v1Tag()), read(song));
+    }
+
+    /**
+     * A Lyrics3 v1 tag is removed.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void lyrics3v1() throws Exception {
+        byte[] lyrics = ascii("LYRICSBEGIN" + "[00:01]Some lyrics"
+                + "LYRICSEND");
+        File song = write(audio(), lyrics, id3v1Tag());
+
+        assertTrue(TagReader.read(song).hasCustomTag());
+        TrailingTags.strip(song, false, true);
+        assertArrayEquals(concat(audio(), id3v1Tag()), read(song));
+    }
+
+    /**
+     * A Lyrics3 v2 tag is removed, located with the size written before its
+     * end marker.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void lyrics3v2() throws Exception {
+        String fields = "LYRICSBEGIN" + "IND00002" + "10"
+                + "LYR00011" + "Some lyrics";
+        byte[] lyrics = ascii(fields + String.format("%06d", fields.length())
+                + "LYRICS200");
+        File song = write(audio(), lyrics, id3v1Tag());
+
+        assertTrue(TagReader.read(song).hasCustomTag());
+        TrailingTags.strip(song, false, true);
+        assertArrayEquals(concat(audio(), id3v1Tag()), read(song));
+    }
+
+    /**
+     * Several custom tags are removed with the ID3v1 tag, only the audio data
+     * being kept.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void customTagsAndId3v1Tag() throws Exception {
+        File song = write(audio(), ascii("LYRICSBEGIN" + "LYRICSEND"),
+                apeTag(true), id3v1Tag());
+
+        assertEquals(0, TrailingTags.strip(song, true, true));
+        assertArrayEquals(audio(), read(song));
+    }
+
+    /**
+     * Only the ID3v1 tag is removed, the custom tag being kept.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void id3v1TagOnly() throws Exception {
+        File song = write(audio(), apeTag(false), id3v1Tag());
+
+        TrailingTags.strip(song, true, false);
+        assertArrayEquals(concat(audio(), apeTag(false)), read(song));
+    }
+
+    /**
+     * A file without trailing tags is not changed.
+     *
+     * @throws Exception The fixture cannot be read or written
+     */
+    @Test
+    public void noTrailingTag() throws Exception {
+        File song = write(audio());
+
+        assertFalse(TagReader.read(song).hasCustomTag());
+        assertEquals(0, TrailingTags.strip(song, true, true));
+        assertArrayEquals(audio(), read(song));
+    }
+
+    /**
+     * @return Audio data, MPEG frame headers followed by arbitrary bytes
+     */
+    private static byte[] audio() {
+        byte[] audio = new byte[1024];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (byte) (i % 417 == 0 ? 0xff : i * 31);
+        }
+        return audio;
+    }
+
+    /**
+     * @return ID3v1 tag
+     */
+    private static byte[] id3v1Tag() {
+        byte[] tag = new byte[128];
+        System.arraycopy(ascii("TAGTitle"), 0, tag, 0, 8);
+        System.arraycopy(ascii("Artist"), 0, tag, 33, 6);
+        System.arraycopy(ascii("Album"), 0, tag, 63, 5);
+        System.arraycopy(ascii("1999"), 0, tag, 93, 4);
+        tag[127] = 17;
+        return tag;
+    }
+
+    /**
+     * @return Enhanced ID3v1 block
+     */
+    private static byte[] enhancedBlock() {
+        byte[] block = new byte[227];
+        System.arraycopy(ascii("TAG+Long title"), 0, block, 0, 14);
+        return block;
+    }
+
+    /**
+     * Build an APEv2 tag with one item.
+     *
+     * @param header true to write a header before the items
+     * @return APEv2 tag
+     */
+    private static byte[] apeTag(final boolean header) {
+        byte[] key = ascii("Title");
+        byte[] value = ascii("Song");
+        ByteBuffer item = ByteBuffer.allocate(8 + key.length + 1
+                + value.length).order(ByteOrder.LITTLE_ENDIAN);
+        item.putInt(value.length).putInt(0).put(key).put((byte) 0)
+                .put(value);
+        int flags = header ? APE_HAS_HEADER : 0;
+        byte[] footer = apeHeader(item.capacity() + 32, flags);
+        if (!header) {
+            return concat(item.array(), footer);
+        }
+        return concat(apeHeader(item.capacity() + 32, flags | APE_IS_HEADER),
+                item.array(), footer);
+    }
+
+    /**
+     * Build an APEv2 header or footer.
+     *
+     * @param size  Size of the items and the footer
+     * @param flags Tag flags
+     * @return APEv2 header or footer
+     */
+    private static byte[] apeHeader(final int size, final int flags) {
+        ByteBuffer header = ByteBuffer.allocate(32)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.put(ascii("APETAGEX")).putInt(2000).putInt(size).putInt(1)
+                .putInt(flags);
+        return header.array();
+    }
+
+    /**
+     * @param s ASCII string
+     * @return Bytes of the string
+     */
+    private static byte[] ascii(final String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param parts Byte arrays to concatenate
+     * @return Concatenated byte arrays
+     */
+    private static byte[] concat(final byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.write(part, 0, part.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write a MP3 file made of the given parts.
+     *
+     * @param parts Parts of the file
+     * @return Written file
+     * @throws IOException The file cannot be written
+     */
+    private File write(final byte[]... parts) throws IOException {
+        File song = folder.newFile("01 - Song.mp3");
+        Files.write(song.toPath(), concat(parts));
+        return song;
+    }
+
+    /**
+     * @param song MP3 file
+     * @return Content of the file
+     * @throws IOException The file cannot be read
+     */
+    private static byte[] read(final File song) throws IOException {
+        return Files.readAllBytes(song.toPath());
+    }
+}